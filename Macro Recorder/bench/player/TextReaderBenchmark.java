@@ -0,0 +1,205 @@
+package player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import recorder.BinaryFormat;
+
+/**
+ * Compares {@link TextRecordingReader} with the readLine/split parser it
+ * replaced, on a generated text recording of several million lines.
+ *
+ * java -cp bin player.TextReaderBenchmark [file] [events]
+ *
+ * The file (text-benchmark.txt in the temporary directory by default) is
+ * generated with the given number of events, each followed by its wait, if
+ * it doesn't exist yet: mostly moves, with key and button presses carrying
+ * the names KeyRecorder writes, CRLF line breaks and both Wait and
+ * WaitMicros lines. Both parsers first have to agree on every action, then
+ * each reads the file a few times; the last pass is reported, with the
+ * bytes it allocated where the JVM can count them.
+ */
+public class TextReaderBenchmark {
+	private static final int defaultEvents = 2000000;
+	private static final int passes = 5;
+
+	public static void main(String[] args) throws IOException {
+		String filepath = args.length > 0 ? args[0]
+				: new File(System.getProperty("java.io.tmpdir"), "text-benchmark.txt").getPath();
+		int events = args.length > 1 ? Integer.parseInt(args[1]) : defaultEvents;
+
+		File file = new File(filepath);
+		if (!file.exists()) {
+			generate(file, events);
+		}
+		compare(filepath);
+
+		for (int pass = 1 ; pass <= passes ; pass++) {
+			boolean last = pass == passes;
+			measure("readLine/split", new LineSplitReader(new BufferedInputStream(new FileInputStream(filepath), 64 * 1024)), file, last);
+			measure("byte scanner  ", RecordingReader.open(filepath), file, last);
+		}
+	}
+
+	private static void generate(File file, int events) throws IOException {
+		Random random = new Random(1);
+		BufferedWriter out = new BufferedWriter(new FileWriter(file), 64 * 1024);
+		try {
+			for (int i = 0 ; i < events ; i++) {
+				switch (i % 8) {
+					case 0:
+						out.write("KeyPress 65 (A)\r\n");
+						break;
+					case 1:
+						out.write("KeyRelease 65 (A)\r\n");
+						break;
+					case 2:
+						out.write("MousePress " + (1 + (i / 8) % 3) + "\r\n");
+						break;
+					case 3:
+						out.write("MouseRelease " + (1 + (i / 8) % 3) + "\r\n");
+						break;
+					default:
+						out.write("Move " + random.nextInt(1920) + " " + random.nextInt(1080) + "\r\n");
+				}
+				if (i % 3 == 0) {
+					out.write("WaitMicros " + random.nextInt(20000) + "\r\n");
+				} else {
+					out.write("Wait " + random.nextInt(20) + "\r\n");
+				}
+			}
+			out.write("Modifiers 0\r\nExit\r\n");
+		} finally {
+			out.close();
+		}
+		System.out.println("Generated " + file.getPath() + ": " + (2L * events + 2) + " lines, " + file.length() + " bytes");
+	}
+
+	// Both parsers have to return the same actions with the same values.
+	private static void compare(String filepath) throws IOException {
+		RecordingReader expected = new LineSplitReader(new BufferedInputStream(new FileInputStream(filepath), 64 * 1024));
+		RecordingReader actual = RecordingReader.open(filepath);
+		try {
+			long actions = 0;
+			while (true) {
+				int op = expected.next();
+				if (op != actual.next() || expected.x != actual.x || expected.y != actual.y
+						|| expected.code != actual.code || expected.waitMicros != actual.waitMicros) {
+					throw new IllegalStateException("Parsers differ at action " + actions + ".");
+				}
+				if (op == RecordingReader.end) {
+					break;
+				}
+				actions++;
+			}
+			System.out.println("Both parsers read the same " + actions + " actions");
+		} finally {
+			expected.close();
+			actual.close();
+		}
+	}
+
+	private static void measure(String name, RecordingReader in, File file, boolean report) throws IOException {
+		long before = allocated();
+		long start = System.nanoTime();
+		long actions = 0;
+		long sum = 0;
+		try {
+			for (int op = in.next() ; op != RecordingReader.end ; op = in.next()) {
+				actions++;
+				sum += op + in.x + in.code + in.waitMicros;
+			}
+		} finally {
+			in.close();
+		}
+		long nanos = System.nanoTime() - start;
+		long bytes = allocated() - before;
+
+		if (report) {
+			System.out.println(name + ": " + actions + " lines in " + nanos / 1000000 + " ms, "
+					+ Math.round(actions * 10000.0 / nanos) / 10.0 + " M lines/s, "
+					+ Math.round(file.length() * 1000.0 / nanos) + " MB/s"
+					+ (bytes < 0 ? "" : ", " + Math.round(bytes * 10.0 / actions) / 10.0 + " bytes allocated per line")
+					+ " (checksum " + sum + ")");
+		}
+	}
+
+	// Bytes allocated by this thread so far, or -1 if the JVM can't tell.
+	private static long allocated() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+			if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+				return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The text parser before TextRecordingReader scanned bytes: a line at a
+	 * time through a Reader, split on spaces.
+	 */
+	static class LineSplitReader extends RecordingReader {
+		private final BufferedReader in;
+
+		LineSplitReader(InputStream in) {
+			this.in = new BufferedReader(new InputStreamReader(in));
+		}
+
+		@Override
+		public int next() throws IOException {
+			String input = in.readLine();
+			while (input != null) {
+				String[] split = input.split(" ");
+				if (split[0].equals("Move")) {
+					x = Integer.parseInt(split[1]);
+					y = Integer.parseInt(split[2]);
+					return BinaryFormat.opMove;
+				} else if (split[0].equals("MousePress")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opMousePress;
+				} else if (split[0].equals("MouseRelease")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opMouseRelease;
+				} else if (split[0].equals("Scroll")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opScroll;
+				} else if (split[0].equals("KeyPress")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opKeyPress;
+				} else if (split[0].equals("KeyRelease")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opKeyRelease;
+				} else if (split[0].equals("Wait")) {
+					waitMicros = Integer.parseInt(split[1]) * 1000L;
+					return BinaryFormat.opWait;
+				} else if (split[0].equals("WaitMicros")) {
+					waitMicros = Long.parseLong(split[1]);
+					return BinaryFormat.opWait;
+				} else if (split[0].equals("Modifiers")) {
+					code = Integer.parseInt(split[1]);
+					return BinaryFormat.opModifiers;
+				} else if (split[0].equals("Exit")) {
+					return BinaryFormat.opExit;
+				}
+				input = in.readLine();
+			}
+			return end;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
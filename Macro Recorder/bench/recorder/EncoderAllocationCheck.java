@@ -0,0 +1,82 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that encoding events allocates nothing, using the allocated bytes
+ * counter of the current thread. Every writer built on {@link EventEncoder}
+ * writes a mix of all event types to a stream that drops them; after a
+ * warm-up the counter must not move. A few bytes can come from the JIT
+ * finishing its work during a round, so each writer gets a few rounds to
+ * show one with nothing allocated.
+ *
+ * Needs a HotSpot based JVM and JNativeHook on the class path, e.g.
+ * java -cp bin;lib/JNativeHook/jar/JNativeHook.jar recorder.EncoderAllocationCheck
+ * Exits with 1 if anything was allocated.
+ */
+public class EncoderAllocationCheck {
+	private static final int warmUp = 1000000;
+	private static final int events = 1000000;
+	private static final int rounds = 3;
+
+	public static void main(String[] args) throws IOException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.err.println("This JVM can't count allocated bytes.");
+			System.exit(1);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		KeyTable.load();
+
+		OutputStream discard = new OutputStream() {
+			public void write(int b) {
+			}
+
+			public void write(byte[] b, int offset, int length) {
+			}
+		};
+		EventWriter[] writers = {
+				new RecordingWriter(discard, false),
+				new RecordingWriter(discard, true),
+				new BinaryRecordingWriter(discard, false),
+				new BinaryRecordingWriter(discard, true) };
+
+		boolean failed = false;
+		long thread = Thread.currentThread().getId();
+		for (EventWriter writer : writers) {
+			write(writer, warmUp);
+			long allocated = -1;
+			for (int round = 0 ; round < rounds && allocated != 0 ; round++) {
+				long before = threads.getThreadAllocatedBytes(thread);
+				write(writer, events);
+				allocated = threads.getThreadAllocatedBytes(thread) - before;
+			}
+			writer.close();
+
+			System.out.println(writer.getClass().getSimpleName() + " (" + (writer.getWaitUnit() == 1000 ? "micros" : "millis")
+					+ "): " + allocated + " bytes over " + events + " events, "
+					+ (double) allocated / events + " per event");
+			failed |= allocated > 0;
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	// Moves, buttons, scrolls, keys and modifier changes, with their waits.
+	private static void write(EventWriter writer, int count) throws IOException {
+		for (int i = 0 ; i < count ; i++) {
+			int type = EventType.MOVE + i % (EventType.KEY_RELEASE - EventType.MOVE + 1);
+			if (type == EventType.KEY_PRESS || type == EventType.KEY_RELEASE) {
+				writer.write(type, 30 + i % 20, 0, 65 + i % 20, i % 17);
+			} else {
+				writer.write(type, i & 2047, i & 1023, 1 + i % 3, i % 17);
+			}
+			if (i % 1000 == 0) {
+				writer.writeModifiers(i & 0xFF);
+			}
+		}
+	}
+}
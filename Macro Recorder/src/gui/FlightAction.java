@@ -0,0 +1,42 @@
+package gui;
+
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+
+import recorder.MainRecorder;
+
+public class FlightAction implements ActionListener {
+	public JFileChooser browse;
+
+	public FlightAction(JFileChooser browse) {
+		this.browse = browse;
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent arg0) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+            	// Dumps are saved to the current browsing directory.
+            	try {
+                	MainRecorder.root = browse.getCurrentDirectory().getCanonicalPath() + "\\";
+            	} catch (IOException iox) {
+            		System.err.println("Canonical path not found.");
+            		System.err.println(iox.getMessage());
+
+            		System.exit(1);
+            	}
+
+            	UI.gui.setState(Frame.ICONIFIED);
+            	ImageIcon img = new ImageIcon(System.getProperty("user.dir") + "\\img\\recordIcon.png");
+            	UI.gui.setIconImage(img.getImage());
+            	MainRecorder.flight();
+            }
+        });
+	}
+
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 
 import javax.swing.ImageIcon;
 import javax.swing.JFileChooser;
+import javax.swing.JSpinner;
 import javax.swing.SwingUtilities;
 
 import player.MainPlayer;
@@ -14,13 +15,16 @@ import player.MainPlayer;
 public class PlayAction implements ActionListener {
 	public JFileChooser browse;
 	public String sbrowse;
+	public JSpinner speed;
 	
-	public PlayAction(JFileChooser browse) {
+	public PlayAction(JFileChooser browse, JSpinner speed) {
 		this.browse = browse;
+		this.speed = speed;
 	}
 	
-	public PlayAction(String sbrowse) {
+	public PlayAction(String sbrowse, JSpinner speed) {
 		this.sbrowse = sbrowse;
+		this.speed = speed;
 	}
 	
 	@Override
@@ -46,6 +50,7 @@ public class PlayAction implements ActionListener {
             	}
         		
         		
+            	MainPlayer.speed = ((Number) speed.getValue()).doubleValue();
             	if (MainPlayer.filepath != null) {
                 	UI.gui.setState(Frame.ICONIFIED);
                 	ImageIcon img = new ImageIcon(System.getProperty("user.dir") + "\\img\\playIcon.png");
@@ -4,12 +4,17 @@ import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 
+import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 
+import player.MainPlayer;
 import program.MainProgram;
 
 public class UI {
@@ -28,8 +33,31 @@ public class UI {
 	    		
 	    		JButton record = new JButton("Record");
 	    		JButton play = new JButton("Play");
+	    		JButton flight = new JButton("Flight Recorder");
 	    		JTextField filename = new JTextField("out.txt", 60);
 	    		JFileChooser browse = new JFileChooser(System.getProperty("user.dir"));
+	    		JSpinner speed = new JSpinner(new SpinnerNumberModel(MainPlayer.speed, MainPlayer.minSpeed, MainPlayer.maxSpeed, 1.0) {
+	    			private static final long serialVersionUID = 1L;
+
+	    			// Doubled and halved, so the arrows reach both ends of the range.
+	    			@Override
+	    			public Object getNextValue() {
+	    				return step(2);
+	    			}
+
+	    			@Override
+	    			public Object getPreviousValue() {
+	    				return step(0.5);
+	    			}
+
+	    			private Object step(double factor) {
+	    				double value = getNumber().doubleValue();
+	    				double next = Math.max(MainPlayer.minSpeed, Math.min(MainPlayer.maxSpeed, value * factor));
+	    				return next == value ? null : (Object) next;
+	    			}
+	    		});
+	    		JLabel speedLabel = new JLabel("Speed", new ImageIcon(System.getProperty("user.dir") + "\\img\\speedUpIcon.png"), JLabel.LEFT);
+	    		JPanel speedPanel = new JPanel();
 	    		
 	    		filename.setFont(new Font("Courier New", Font.PLAIN, 12));
 	    		
@@ -37,17 +65,22 @@ public class UI {
 	    		browse.setDialogTitle("Choose input file");
 	    		browse.setControlButtonsAreShown(false);
 	    		
+	    		speed.setEditor(new JSpinner.NumberEditor(speed, "0.0#"));
+	    		speedPanel.add(speedLabel);
+	    		speedPanel.add(speed);
+	    		
 	    		if(MainProgram.astart!=null)
 	    		{
-	    			play.addActionListener(new PlayAction(MainProgram.astart));
+	    			play.addActionListener(new PlayAction(MainProgram.astart, speed));
 	    			flag = true;
 	    		}
 	    		else
 	    		{
-	    			play.addActionListener(new PlayAction(browse));
+	    			play.addActionListener(new PlayAction(browse, speed));
 	    		}
 	    		
 	    		record.addActionListener(new RecordAction(filename, browse));
+	    		flight.addActionListener(new FlightAction(browse));
 	    		
 	    	    actions.setLayout(gridbag);
 
@@ -62,6 +95,10 @@ public class UI {
 	    	    actions.add(browse, c);
 	    	    c.gridy = 3;
 	    	    actions.add(play, c);
+	    	    c.gridy = 4;
+	    	    actions.add(speedPanel, c);
+	    	    c.gridy = 5;
+	    	    actions.add(flight, c);
 	    	    
 	    	    gui.add(actions);
 	    	    
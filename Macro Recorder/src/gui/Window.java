@@ -7,7 +7,8 @@ import javax.swing.ImageIcon;
 import javax.swing.WindowConstants;
 
 import javax.swing.JFrame;
-import org.jnativehook.GlobalScreen;
+
+import recorder.RecordingSession;
 
 public class Window extends JFrame implements WindowListener {
 
@@ -35,9 +36,7 @@ public class Window extends JFrame implements WindowListener {
 
 	@Override
 	public void windowClosed(WindowEvent arg0) {
-		if (GlobalScreen.isNativeHookRegistered()) {
-			GlobalScreen.unregisterNativeHook();
-		}
+		RecordingSession.closeHook();
         System.runFinalization();
         System.exit(0);
 	}
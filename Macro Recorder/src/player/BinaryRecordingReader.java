@@ -0,0 +1,76 @@
+package player;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import recorder.BinaryFormat;
+
+/**
+ * Reads the {@link BinaryFormat} written by the recorder.
+ */
+public class BinaryRecordingReader extends RecordingReader {
+	private InputStream in;
+	private long waitUnit;
+
+	private int lastX = 0;
+	private int lastY = 0;
+	private long lastWait = 0;
+
+	/**
+	 * @param in positioned at the magic bytes.
+	 */
+	public BinaryRecordingReader(InputStream in) throws IOException {
+		this.in = in;
+		for (int i = 0 ; i < BinaryFormat.magic.length ; i++) {
+			in.read();
+		}
+		int version = in.read();
+		if (version != BinaryFormat.version) {
+			throw new IOException("Unsupported recording version " + version + ".");
+		}
+		int flags = in.read();
+		waitUnit = (flags & BinaryFormat.flagMicros) != 0 ? 1 : 1000;
+	}
+
+	@Override
+	public int next() throws IOException {
+		int op = in.read();
+		switch (op) {
+			case -1:
+				return end;
+			case BinaryFormat.opMove:
+				lastX += (int) BinaryFormat.unZigZag(BinaryFormat.readVarint(in));
+				lastY += (int) BinaryFormat.unZigZag(BinaryFormat.readVarint(in));
+				x = lastX;
+				y = lastY;
+				break;
+			case BinaryFormat.opScroll:
+				code = (int) BinaryFormat.unZigZag(BinaryFormat.readVarint(in));
+				break;
+			case BinaryFormat.opMousePress:
+			case BinaryFormat.opMouseRelease:
+			case BinaryFormat.opKeyPress:
+			case BinaryFormat.opKeyRelease:
+			case BinaryFormat.opSegmentHeader:
+			case BinaryFormat.opModifiers:
+				code = (int) BinaryFormat.readVarint(in);
+				break;
+			case BinaryFormat.opWait:
+				lastWait += BinaryFormat.unZigZag(BinaryFormat.readVarint(in));
+				waitMicros = lastWait * waitUnit;
+				break;
+			case BinaryFormat.opExit:
+			case BinaryFormat.opSegmentBody:
+			case BinaryFormat.opCollapsedRepeats:
+				break;
+			default:
+				throw new IOException("Unknown opcode " + op + ".");
+		}
+		return op;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,61 @@
+package player;
+
+/**
+ * Keeps keys or mouse buttons down for a minimum time during playback.
+ * At high speeds a recorded tap shrinks to well under a millisecond, which
+ * many applications never see, so a release that comes too soon after its
+ * press waits for the rest of the hold. The time lost comes out of the
+ * following waits, as with any late event.
+ *
+ * Press times are kept in arrays indexed by code, so playback allocates
+ * nothing; codes outside the arrays are not held back.
+ */
+public class HoldTimer {
+	private final Waiter waiter;
+	private final long minHoldNanos;
+	// Whether each code is down, and the time of its press.
+	private final boolean[] down;
+	private final long[] pressedAt;
+	private long stretched = 0;
+
+	/**
+	 * @param waiter waits for the end of a hold; give it its own, so holds
+	 * don't count towards the accuracy of the recorded waits.
+	 * @param minHold milliseconds between a press and its release, at least.
+	 * @param codes codes from 0 to codes - 1 are timed.
+	 */
+	public HoldTimer(Waiter waiter, int minHold, int codes) {
+		this.waiter = waiter;
+		this.minHoldNanos = minHold * 1000000L;
+		this.down = new boolean[codes];
+		this.pressedAt = new long[codes];
+	}
+
+	public void pressed(int code) {
+		if (minHoldNanos > 0 && code >= 0 && code < down.length) {
+			down[code] = true;
+			pressedAt[code] = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Returns once the code may be released.
+	 */
+	public void release(int code) {
+		if (code >= 0 && code < down.length && down[code]) {
+			down[code] = false;
+			long until = pressedAt[code] + minHoldNanos;
+			if (until - System.nanoTime() > 0) {
+				stretched++;
+				waiter.waitUntil(until);
+			}
+		}
+	}
+
+	/**
+	 * Releases held back to make the minimum hold.
+	 */
+	public long getStretched() {
+		return stretched;
+	}
+}
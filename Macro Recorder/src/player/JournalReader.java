@@ -0,0 +1,68 @@
+package player;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import recorder.BinaryFormat;
+import recorder.EventType;
+import recorder.JournalFormat;
+
+/**
+ * Reads a {@link JournalFormat} journal, recovering it first so a journal
+ * left behind by a crash plays up to its last complete event.
+ */
+public class JournalReader extends RecordingReader {
+	private final DataInputStream in;
+	private final long waitUnit;
+	private long records;
+
+	// Wait of the last event, reported on the following opWait.
+	private long pendingWait = -1;
+
+	public JournalReader(String filepath) throws IOException {
+		long committed = JournalFormat.recover(filepath);
+		records = committed / JournalFormat.recordSize;
+
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath), 64 * 1024));
+		in.skipBytes(JournalFormat.flagsOffset);
+		int flags = in.readInt();
+		waitUnit = (flags & JournalFormat.flagMicros) != 0 ? 1 : 1000;
+		in.skipBytes(JournalFormat.headerSize - JournalFormat.flagsOffset - 4);
+	}
+
+	@Override
+	public int next() throws IOException {
+		if (pendingWait >= 0) {
+			waitMicros = pendingWait * waitUnit;
+			pendingWait = -1;
+			return BinaryFormat.opWait;
+		}
+		if (records == 0) {
+			return end;
+		}
+		records--;
+
+		int op = in.readInt();
+		int recordX = in.readInt();
+		int recordY = in.readInt();
+		code = in.readInt();
+		long wait = in.readLong();
+		in.skipBytes(JournalFormat.recordSize - JournalFormat.checkOffset);
+
+		if (op == EventType.MOVE) {
+			x = recordX;
+			y = recordY;
+		}
+		if (op >= EventType.MOVE && op <= EventType.KEY_RELEASE) {
+			pendingWait = wait;
+		}
+		return op;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
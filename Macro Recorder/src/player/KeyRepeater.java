@@ -0,0 +1,121 @@
+package player;
+
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+
+/**
+ * Regenerates the autorepeat of held keys during playback. Recordings only
+ * hold one press per hold, and keys pressed by Robot are usually not
+ * repeated by the OS, so while a key is down its press is sent again after
+ * the repeat delay and then at the repeat rate, like a real keyboard does.
+ *
+ * A press recorded while the key is already down (older recordings kept
+ * every repeat) restarts the key's timer, so those are not doubled.
+ *
+ * Held keys are kept in primitive arrays, so playback allocates nothing;
+ * key codes of {@link #codes} and up are not repeated.
+ */
+public class KeyRepeater {
+	/**
+	 * AWT key codes are below this.
+	 */
+	public static final int codes = 0x10000;
+
+	private final Robot player;
+	private final long delayNanos;
+	private final long intervalNanos;
+	// Time of the next repeat of each key code, for the held ones.
+	private final long[] due = new long[codes];
+	private final boolean[] down = new boolean[codes];
+	// Held key codes in the order they were pressed.
+	private int[] held = new int[16];
+	private int heldCount = 0;
+
+	/**
+	 * @param delay milliseconds before the first repeat.
+	 * @param rate repeats per second after that.
+	 */
+	public KeyRepeater(Robot player, int delay, int rate) {
+		this.player = player;
+		this.delayNanos = delay * 1000000L;
+		this.intervalNanos = 1000000000L / Math.max(1, rate);
+	}
+
+	public void pressed(int code) {
+		if (code < 0 || code >= codes || !repeats(code)) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (down[code]) {
+			due[code] = now + intervalNanos;
+			return;
+		}
+		down[code] = true;
+		due[code] = now + delayNanos;
+		if (heldCount == held.length) {
+			held = Arrays.copyOf(held, heldCount * 2);
+		}
+		held[heldCount++] = code;
+	}
+
+	public void released(int code) {
+		if (code < 0 || code >= codes || !down[code]) {
+			return;
+		}
+		down[code] = false;
+		for (int i = 0 ; i < heldCount ; i++) {
+			if (held[i] == code) {
+				System.arraycopy(held, i + 1, held, i, heldCount - i - 1);
+				heldCount--;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the System.nanoTime of the next repeat, if it comes before end,
+	 * otherwise end.
+	 */
+	public long nextRepeat(long end) {
+		long next = end;
+		for (int i = 0 ; i < heldCount ; i++) {
+			if (due[held[i]] - next < 0) {
+				next = due[held[i]];
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Sends the repeats that are due.
+	 */
+	public void repeat() {
+		long now = System.nanoTime();
+		for (int i = 0 ; i < heldCount ; i++) {
+			int code = held[i];
+			if (due[code] - now <= 0) {
+				player.keyPress(code);
+				due[code] = now + intervalNanos;
+			}
+		}
+	}
+
+	// Modifiers and lock keys are never repeated; a repeated lock key would toggle.
+	private static boolean repeats(int code) {
+		switch (code) {
+			case KeyEvent.VK_SHIFT:
+			case KeyEvent.VK_CONTROL:
+			case KeyEvent.VK_ALT:
+			case KeyEvent.VK_ALT_GRAPH:
+			case KeyEvent.VK_META:
+			case KeyEvent.VK_WINDOWS:
+			case KeyEvent.VK_CAPS_LOCK:
+			case KeyEvent.VK_NUM_LOCK:
+			case KeyEvent.VK_SCROLL_LOCK:
+				return false;
+			default:
+				return true;
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package player;
 import gui.UI;
 
-import java.awt.event.InputEvent;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.awt.AWTException;
 import java.awt.Frame;
@@ -14,77 +11,124 @@ import javax.swing.ImageIcon;
 import org.jnativehook.GlobalScreen;
 import org.jnativehook.NativeHookException;
 
+import recorder.BinaryFormat;
+import recorder.RecordingSession;
+
 public class MainPlayer {	
 	public static boolean exit = false;
 	public static boolean pause = false;
 	public static String filepath = null;
+	// Repeats per second sent for held keys of recordings made with key repeats collapsed, 0 to rely on the OS.
+	// Other recordings already contain the repeats.
+	public static int keyRepeatRate = 30;
+	// Milliseconds a key is held before it starts repeating.
+	public static int keyRepeatDelay = 500;
+	// How waits end: WaitMode.PRECISE spins briefly to hit them, CPU_FRIENDLY only sleeps.
+	public static int waitMode = WaitMode.PRECISE;
+	// Playback speed as a multiple of the recorded speed, from minSpeed to maxSpeed.
+	public static double speed = 1;
+	public static final double minSpeed = 0.1;
+	public static final double maxSpeed = 100;
+	// Milliseconds keys and buttons are held at least, however fast the playback.
+	public static int minHoldTime = 10;
 	
 	public static void play() throws IllegalArgumentException {		
+		if (!(speed >= minSpeed && speed <= maxSpeed)) {
+			throw new IllegalArgumentException("Playback speed " + speed + " is not between " + minSpeed + " and " + maxSpeed + ".");
+		}
 		try {			
-			BufferedReader in = new BufferedReader(new FileReader(filepath));
+			// Load everything first, so playback does no parsing.
+			RecordingReader in = RecordingReader.open(filepath);
+			Program program;
+			try {
+				program = Program.compile(in);
+			} finally {
+				in.close();
+			}
 			Robot player = new Robot();
+			KeyRepeater repeater = keyRepeatRate > 0 && program.hasCollapsedRepeats() ? new KeyRepeater(player, keyRepeatDelay, keyRepeatRate) : null;
+			Waiter waiter = new Waiter(waitMode);
+			PlaybackClock clock = new PlaybackClock(waiter, repeater);
+			clock.setSpeed(speed);
+			// Holds wait on their own, so they don't show up as inaccurate waits.
+			Waiter holdWaiter = new Waiter(waiter);
+			HoldTimer keys = new HoldTimer(holdWaiter, minHoldTime, KeyRepeater.codes);
+			ModifierState modifiers = new ModifierState(player, keys);
+			// Buttons are timed by the bit of their mask.
+			HoldTimer buttons = new HoldTimer(holdWaiter, minHoldTime, 32);
 			
-	        GlobalScreen.registerNativeHook();
+	        RecordingSession.acquireHook();
 	        KeyListener exitListen = new KeyListener();
 			GlobalScreen.getInstance().addNativeKeyListener(exitListen);
 
 			ImageIcon img = new ImageIcon(System.getProperty("user.dir") + "\\img\\playIcon.png");
     		UI.gui.setIconImage(img.getImage());
 			
-			String input = in.readLine();
-			int x;
-			int y;
-			int button;
-			int scroll;
-			int keycode;
-			int time;
-			String[] split; 
+			int[] code = program.code();
+			int length = program.length();
+			int pc = 0;
 			
 			//player.setAutoWaitForIdle(true);
-			while(input != null && !MainPlayer.exit) {
-				split = input.split(" ");
-				System.err.println("[" + input + "]");
-				if (split[0].equals("Move")) {				
-					x = Integer.parseInt(split[1]);
-					y = Integer.parseInt(split[2]);
-					player.mouseMove(x, y);
-				} else if (split[0].equals("MousePress")) {
-					button = Integer.parseInt(split[1]);
-					player.mousePress(InputEvent.getMaskForButton(button));
-				} else if (split[0].equals("MouseRelease")) {
-					button = Integer.parseInt(split[1]);
-					player.mouseRelease(InputEvent.getMaskForButton(button));
-				} else if (split[0].equals("Scroll")) {
-					scroll = Integer.parseInt(split[1]);
-					player.mouseWheel(scroll);
-				} else if (split[0].equals("KeyPress")) {
-					keycode = Integer.parseInt(split[1]);
-					player.keyPress(keycode);
-				} else if (split[0].equals("KeyRelease")) {
-					keycode = Integer.parseInt(split[1]);
-					player.keyRelease(keycode);
-				} else if (split[0].equals("Wait")) {
-					time = Integer.parseInt(split[1]);
-					// delay has a max value of 60000, so we need to split it up.
-					while(time > 60000) {
-						time -= 60000;
-						player.delay(60000);
-					}
-					// Im paranoid
-					player.delay(Math.abs(time));
-				} else if (split[0].equals("Exit")) {
-					MainPlayer.exit = true;
+			clock.start();
+			while(pc < length && !MainPlayer.exit) {
+				switch (code[pc]) {
+					case BinaryFormat.opMove:
+						player.mouseMove(code[pc + 1], code[pc + 2]);
+						pc += 3;
+						break;
+					case BinaryFormat.opMousePress:
+						player.mousePress(code[pc + 1]);
+						buttons.pressed(Integer.numberOfTrailingZeros(code[pc + 1]));
+						pc += 2;
+						break;
+					case BinaryFormat.opMouseRelease:
+						buttons.release(Integer.numberOfTrailingZeros(code[pc + 1]));
+						player.mouseRelease(code[pc + 1]);
+						pc += 2;
+						break;
+					case BinaryFormat.opScroll:
+						player.mouseWheel(code[pc + 1]);
+						pc += 2;
+						break;
+					case BinaryFormat.opKeyPress:
+						modifiers.press(code[pc + 1]);
+						keys.pressed(code[pc + 1]);
+						if (repeater != null) {
+							repeater.pressed(code[pc + 1]);
+						}
+						pc += 2;
+						break;
+					case BinaryFormat.opKeyRelease:
+						keys.release(code[pc + 1]);
+						modifiers.release(code[pc + 1]);
+						if (repeater != null) {
+							repeater.released(code[pc + 1]);
+						}
+						pc += 2;
+						break;
+					case BinaryFormat.opModifiers:
+						modifiers.restore(code[pc + 1]);
+						pc += 2;
+						break;
+					case BinaryFormat.opWait:
+						clock.waitUntil(Program.waitTime(code, pc));
+						pc += 3;
+						break;
+					default:
+						throw new IllegalStateException("Bad instruction " + code[pc] + " at " + pc + ".");
 				}
-				input = in.readLine();
 			}
+			modifiers.releaseAll();
+			System.out.println(clock.report());
+			System.out.println("Releases held back for the minimum hold: " + (keys.getStretched() + buttons.getStretched()));
 			
 			UI.gui.resetIcon();
 			UI.gui.setState(Frame.NORMAL);
 			
 			GlobalScreen.getInstance().removeNativeKeyListener(exitListen);
-			GlobalScreen.unregisterNativeHook();
-			MainPlayer.exit = false;			
-			in.close();
+			// Only gives the hook back; a recording may still be using it.
+			RecordingSession.releaseHook();
+			MainPlayer.exit = false;
 		} catch (IOException iox) {
             System.err.println("Cannot read from " + filepath + ".");
             System.err.println(iox.getMessage());
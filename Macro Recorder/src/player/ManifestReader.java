@@ -0,0 +1,77 @@
+package player;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import recorder.BinaryFormat;
+
+/**
+ * Plays the segments listed in a manifest one after the other, as one
+ * recording. Only the header of the first segment is played; the later
+ * ones would press keys and buttons that are already held.
+ */
+public class ManifestReader extends RecordingReader {
+	private final List<String> segments = new ArrayList<String>();
+	private int index = 0;
+	private RecordingReader current = null;
+
+	public ManifestReader(String filepath) throws IOException {
+		File manifest = new File(filepath);
+		BufferedReader in = new BufferedReader(new FileReader(manifest));
+		try {
+			in.readLine();
+			String input = in.readLine();
+			while (input != null) {
+				if (input.length() > 0) {
+					segments.add(new File(manifest.getParentFile(), input).getPath());
+				}
+				input = in.readLine();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public int next() throws IOException {
+		while (true) {
+			if (current == null) {
+				if (index == segments.size()) {
+					return end;
+				}
+				current = RecordingReader.open(segments.get(index++));
+			}
+
+			int op = current.next();
+			if (op == end) {
+				current.close();
+				current = null;
+				continue;
+			}
+			if (op == BinaryFormat.opSegmentHeader && index > 1) {
+				// Later segments continue from where the previous one left off.
+				while (op != BinaryFormat.opSegmentBody && op != end) {
+					op = current.next();
+				}
+				continue;
+			}
+
+			x = current.x;
+			y = current.y;
+			code = current.code;
+			waitMicros = current.waitMicros;
+			return op;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (current != null) {
+			current.close();
+		}
+	}
+}
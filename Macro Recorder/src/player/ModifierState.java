@@ -0,0 +1,91 @@
+package player;
+
+import java.awt.Robot;
+import java.awt.event.KeyEvent;
+
+import org.jnativehook.NativeInputEvent;
+
+import recorder.KeyTable;
+
+/**
+ * Which modifier keys the player is holding down. Recorded modifier masks
+ * are reached by pressing and releasing only the keys that differ, and a
+ * press of a modifier that is already down (or a release of one that
+ * isn't) is not sent again. Robot can't tell left from right, so both
+ * sides of a modifier map to the same key. Modifiers pressed and released
+ * to reach a mask are timed like any other key.
+ */
+public class ModifierState {
+	private static final int[] masks = { NativeInputEvent.SHIFT_MASK, NativeInputEvent.CTRL_MASK,
+			NativeInputEvent.META_MASK, NativeInputEvent.ALT_MASK };
+	private static final int[] keys = { KeyEvent.VK_SHIFT, KeyEvent.VK_CONTROL, KeyTable.awtMeta, KeyEvent.VK_ALT };
+
+	private final Robot player;
+	private final HoldTimer timer;
+	// Bit i set while keys[i] is down.
+	private int held = 0;
+
+	/**
+	 * @param timer holds the keys of restored masks down long enough.
+	 */
+	public ModifierState(Robot player, HoldTimer timer) {
+		this.player = player;
+		this.timer = timer;
+	}
+
+	/**
+	 * Presses a key unless it is a modifier that is already down.
+	 */
+	public void press(int code) {
+		int bit = bit(code);
+		if (bit == 0 || (held & bit) == 0) {
+			player.keyPress(code);
+			held |= bit;
+		}
+	}
+
+	/**
+	 * Releases a key unless it is a modifier that is already up.
+	 */
+	public void release(int code) {
+		int bit = bit(code);
+		if (bit == 0 || (held & bit) != 0) {
+			player.keyRelease(code);
+			held &= ~bit;
+		}
+	}
+
+	/**
+	 * Presses and releases the modifiers that differ from a recorded mask.
+	 */
+	public void restore(int mask) {
+		for (int i = 0 ; i < keys.length ; i++) {
+			boolean down = (mask & masks[i]) != 0;
+			if (down && (held & (1 << i)) == 0) {
+				player.keyPress(keys[i]);
+				timer.pressed(keys[i]);
+				held |= 1 << i;
+			} else if (!down && (held & (1 << i)) != 0) {
+				timer.release(keys[i]);
+				player.keyRelease(keys[i]);
+				held &= ~(1 << i);
+			}
+		}
+	}
+
+	/**
+	 * Lets go of every modifier still down, e.g. when playback is stopped.
+	 */
+	public void releaseAll() {
+		restore(0);
+	}
+
+	private static int bit(int code) {
+		for (int i = 0 ; i < keys.length ; i++) {
+			if (keys[i] == code) {
+				return 1 << i;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,148 @@
+package player;
+
+/**
+ * Paces playback against absolute deadlines. The waits of a {@link Program}
+ * are times since the start of the recording, so each one becomes a
+ * System.nanoTime deadline counted from the start of playback, instead of
+ * a sleep for the recorded gap from whenever the previous event got done.
+ * Time spent injecting events, or a sleep that overshoots, comes out of the
+ * next wait rather than piling up over the run; when playback is already
+ * past a deadline it doesn't wait at all.
+ *
+ * Played at another speed, every time since the start is divided by the
+ * speed before it becomes a deadline, so the waits are scaled exactly and
+ * rounding never adds up either.
+ *
+ * The waiting itself, and so how close to a deadline a wait can end, is
+ * up to a {@link Waiter}. How far each wait ended from its deadline is kept
+ * to report the drift of the run.
+ */
+public class PlaybackClock {
+	private final Waiter waiter;
+	private final KeyRepeater repeater;
+	private double speed = 1;
+	private long start;
+
+	private long waits = 0;
+	private long late = 0;
+	private long totalDrift = 0;
+	private long maxLate = 0;
+	private long maxEarly = 0;
+	private long lastDrift = 0;
+
+	/**
+	 * @param waiter does the waiting.
+	 * @param repeater sends key repeats while waiting, or null.
+	 */
+	public PlaybackClock(Waiter waiter, KeyRepeater repeater) {
+		this.waiter = waiter;
+		this.repeater = repeater;
+	}
+
+	/**
+	 * @param speed multiple of the recorded speed, more than 0.
+	 */
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Starts the run now; deadlines are counted from here.
+	 */
+	public void start() {
+		start = System.nanoTime();
+		waits = 0;
+		late = 0;
+		totalDrift = 0;
+		maxLate = 0;
+		maxEarly = 0;
+		lastDrift = 0;
+	}
+
+	/**
+	 * Waits until the given time since the start of the run.
+	 * @param micros the recorded time of the next event, in microseconds.
+	 */
+	public void waitUntil(long micros) {
+		long deadline = start + (speed == 1 ? micros * 1000L : Math.round(micros * 1000.0 / speed));
+		if (deadline - System.nanoTime() <= 0) {
+			late++;
+		} else if (repeater != null) {
+			long next = repeater.nextRepeat(deadline);
+			while (next != deadline) {
+				waiter.waitUntil(next);
+				repeater.repeat();
+				next = repeater.nextRepeat(deadline);
+			}
+			waiter.waitUntil(deadline);
+		} else {
+			waiter.waitUntil(deadline);
+		}
+
+		long drift = System.nanoTime() - deadline;
+		waits++;
+		totalDrift += Math.abs(drift);
+		if (drift > maxLate) {
+			maxLate = drift;
+		}
+		if (-drift > maxEarly) {
+			maxEarly = -drift;
+		}
+		lastDrift = drift;
+	}
+
+	public long getWaits() {
+		return waits;
+	}
+
+	/**
+	 * Waits whose deadline had already passed when they were reached.
+	 */
+	public long getLate() {
+		return late;
+	}
+
+	/**
+	 * Mean distance between the end of a wait and its deadline, in nanoseconds.
+	 */
+	public long getMeanDrift() {
+		return waits == 0 ? 0 : totalDrift / waits;
+	}
+
+	/**
+	 * Latest a wait ended after its deadline, in nanoseconds.
+	 */
+	public long getMaxLate() {
+		return maxLate;
+	}
+
+	/**
+	 * Earliest a wait ended before its deadline, in nanoseconds.
+	 */
+	public long getMaxEarly() {
+		return maxEarly;
+	}
+
+	/**
+	 * Drift of the last wait, which is how far behind or ahead of the
+	 * recording the run finished, in nanoseconds.
+	 */
+	public long getFinalDrift() {
+		return lastDrift;
+	}
+
+	public String report() {
+		return "Playback drift at " + speed + "x: mean " + millis(getMeanDrift()) + " ms, max late "
+				+ millis(maxLate) + " ms, max early " + millis(maxEarly) + " ms over "
+				+ waits + " waits (" + late + " already late), finished "
+				+ millis(lastDrift) + " ms off schedule\n" + waiter.report();
+	}
+
+	private static double millis(long nanos) {
+		return (nanos / 1000) / 1000.0;
+	}
+}
@@ -0,0 +1,139 @@
+package player;
+
+import java.awt.event.InputEvent;
+import java.io.IOException;
+import java.util.Arrays;
+
+import recorder.BinaryFormat;
+
+/**
+ * A recording compiled for playback into one flat int array, so nothing is
+ * parsed or looked up while events are being injected.
+ *
+ * Every instruction is a {@link BinaryFormat} opcode followed by its
+ * operands:
+ * <ul>
+ * <li>opMove: x, y</li>
+ * <li>opMousePress, opMouseRelease: the Robot button mask</li>
+ * <li>opScroll: the wheel rotation</li>
+ * <li>opKeyPress, opKeyRelease: the AWT key code</li>
+ * <li>opModifiers: the modifier mask</li>
+ * <li>opWait: the time since the start of the recording in microseconds,
+ * high and low int. Consecutive waits are summed into one.</li>
+ * </ul>
+ * Segment markers are dropped and the program ends at the first opExit.
+ * opCollapsedRepeats only sets {@link #hasCollapsedRepeats()}.
+ */
+public final class Program {
+	private final int[] code;
+	private final int length;
+	private final long duration;
+	private final boolean collapsedRepeats;
+
+	private Program(int[] code, int length, long duration, boolean collapsedRepeats) {
+		this.code = code;
+		this.length = length;
+		this.duration = duration;
+		this.collapsedRepeats = collapsedRepeats;
+	}
+
+	/**
+	 * Reads the whole recording. The reader is left at its end, open.
+	 */
+	public static Program compile(RecordingReader in) throws IOException {
+		int[] code = new int[1024];
+		int length = 0;
+		long time = 0;
+		boolean waiting = false;
+		boolean collapsedRepeats = false;
+
+		for (int op = in.next() ; op != RecordingReader.end && op != BinaryFormat.opExit ; op = in.next()) {
+			if (op == BinaryFormat.opWait) {
+				time += in.getWaitMicros();
+				waiting = true;
+				continue;
+			}
+			if (op == BinaryFormat.opSegmentHeader || op == BinaryFormat.opSegmentBody) {
+				continue;
+			}
+			if (op == BinaryFormat.opCollapsedRepeats) {
+				collapsedRepeats = true;
+				continue;
+			}
+
+			if (length + 6 > code.length) {
+				code = Arrays.copyOf(code, code.length * 2);
+			}
+			if (waiting) {
+				length = putWait(code, length, time);
+				waiting = false;
+			}
+			switch (op) {
+				case BinaryFormat.opMove:
+					code[length++] = op;
+					code[length++] = in.getX();
+					code[length++] = in.getY();
+					break;
+				case BinaryFormat.opMousePress:
+				case BinaryFormat.opMouseRelease:
+					code[length++] = op;
+					code[length++] = InputEvent.getMaskForButton(in.getCode());
+					break;
+				case BinaryFormat.opScroll:
+				case BinaryFormat.opKeyPress:
+				case BinaryFormat.opKeyRelease:
+				case BinaryFormat.opModifiers:
+					code[length++] = op;
+					code[length++] = in.getCode();
+					break;
+			}
+		}
+		if (waiting) {
+			if (length + 3 > code.length) {
+				code = Arrays.copyOf(code, code.length + 3);
+			}
+			length = putWait(code, length, time);
+		}
+		return new Program(code, length, time, collapsedRepeats);
+	}
+
+	/**
+	 * The instructions, valid up to {@link #length()}.
+	 */
+	public int[] code() {
+		return code;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Total of the waits, in microseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * True if key autorepeat was collapsed when the recording was made, so
+	 * held keys have to be repeated during playback.
+	 */
+	public boolean hasCollapsedRepeats() {
+		return collapsedRepeats;
+	}
+
+	/**
+	 * The time operand of the opWait at pc.
+	 */
+	public static long waitTime(int[] code, int pc) {
+		return ((long) code[pc + 1] << 32) | (code[pc + 2] & 0xFFFFFFFFL);
+	}
+
+	private static int putWait(int[] code, int length, long time) {
+		code[length++] = BinaryFormat.opWait;
+		code[length++] = (int) (time >>> 32);
+		code[length++] = (int) time;
+		return length;
+	}
+}
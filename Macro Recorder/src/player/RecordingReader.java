@@ -0,0 +1,80 @@
+package player;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import recorder.BinaryFormat;
+import recorder.RecordingFormat;
+
+/**
+ * Reads the actions of a recording one at a time, whatever its format.
+ * Actions use the {@link BinaryFormat} opcodes; waits are always reported
+ * in microseconds.
+ */
+public abstract class RecordingReader {
+	public static final int end = -1;
+
+	protected int x;
+	protected int y;
+	protected int code;
+	protected long waitMicros;
+
+	/**
+	 * Opens a recording, telling the formats apart by their first bytes.
+	 * Gzipped recordings are inflated as they are read and journals are
+	 * recovered first.
+	 */
+	public static RecordingReader open(String filepath) throws IOException {
+		int format = RecordingFormat.of(filepath);
+		if (format == RecordingFormat.MANIFEST) {
+			return new ManifestReader(filepath);
+		}
+		if (format == RecordingFormat.JOURNAL) {
+			return new JournalReader(filepath);
+		}
+		InputStream in = new FileInputStream(filepath);
+		if (format == RecordingFormat.GZIP) {
+			InputStream inflated = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+			if (BinaryFormat.isBinary(inflated)) {
+				return new BinaryRecordingReader(inflated);
+			}
+			// The text reader has its own buffer; reopen the file so bytes aren't copied twice.
+			inflated.close();
+			return new TextRecordingReader(new GZIPInputStream(new FileInputStream(filepath), 64 * 1024));
+		}
+		if (format == RecordingFormat.BINARY) {
+			return new BinaryRecordingReader(new BufferedInputStream(in, 64 * 1024));
+		}
+		return new TextRecordingReader(in);
+	}
+
+	/**
+	 * Reads the next action.
+	 * @return its opcode, or {@link #end} at the end of the recording.
+	 */
+	public abstract int next() throws IOException;
+
+	public abstract void close() throws IOException;
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Button, wheel rotation, AWT key code or segment index of the last action.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	public long getWaitMicros() {
+		return waitMicros;
+	}
+}
@@ -0,0 +1,217 @@
+package player;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import recorder.BinaryFormat;
+import recorder.RecordingFormat;
+
+/**
+ * Reads the text recording format, one action per line.
+ * Lines it doesn't know are skipped, as is anything after the numbers of
+ * a line, like the (KeyName) of key lines. Every line is written with its
+ * line break, so a last line without one was cut short, e.g. by a crash;
+ * it is left out with a warning and the recording plays up to there.
+ *
+ * Lines are scanned as bytes in a reusable buffer and numbers are decoded
+ * in place, so reading allocates nothing per line.
+ */
+public class TextRecordingReader extends RecordingReader {
+	private static final int bufferSize = 64 * 1024;
+
+	private static final byte[] moveLabel = RecordingFormat.ascii("Move");
+	private static final byte[] mousePressLabel = RecordingFormat.ascii("MousePress");
+	private static final byte[] mouseReleaseLabel = RecordingFormat.ascii("MouseRelease");
+	private static final byte[] scrollLabel = RecordingFormat.ascii("Scroll");
+	private static final byte[] keyPressLabel = RecordingFormat.ascii("KeyPress");
+	private static final byte[] keyReleaseLabel = RecordingFormat.ascii("KeyRelease");
+	private static final byte[] waitMillisLabel = RecordingFormat.ascii("Wait");
+	private static final byte[] waitMicrosLabel = RecordingFormat.ascii("WaitMicros");
+	private static final byte[] modifiersLabel = RecordingFormat.ascii("Modifiers");
+	private static final byte[] collapsedRepeatsLabel = RecordingFormat.ascii("CollapsedRepeats");
+	private static final byte[] exitLabel = RecordingFormat.ascii("Exit");
+	private static final byte[] segmentHeaderLabel = RecordingFormat.ascii("SegmentHeader");
+	private static final byte[] segmentBodyLabel = RecordingFormat.ascii("SegmentBody");
+
+	private final InputStream in;
+	private final byte[] buffer = new byte[bufferSize];
+	private int position = 0;
+	private int limit = 0;
+	private boolean eof = false;
+	// Start of the unread part of the current line, and its end.
+	private int cursor;
+	private int lineEnd;
+
+	/**
+	 * @param in read in large blocks, so it needn't be buffered.
+	 */
+	public TextRecordingReader(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int next() throws IOException {
+		while (nextLine()) {
+			int start = cursor;
+			int op = -1;
+			if (token(moveLabel, start)) {
+				x = (int) number();
+				y = (int) number();
+				op = BinaryFormat.opMove;
+			} else if (token(mousePressLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opMousePress;
+			} else if (token(mouseReleaseLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opMouseRelease;
+			} else if (token(scrollLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opScroll;
+			} else if (token(keyPressLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opKeyPress;
+			} else if (token(keyReleaseLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opKeyRelease;
+			} else if (token(waitMillisLabel, start)) {
+				waitMicros = number() * 1000L;
+				op = BinaryFormat.opWait;
+			} else if (token(waitMicrosLabel, start)) {
+				waitMicros = number();
+				op = BinaryFormat.opWait;
+			} else if (token(modifiersLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opModifiers;
+			} else if (token(collapsedRepeatsLabel, start)) {
+				op = BinaryFormat.opCollapsedRepeats;
+			} else if (token(exitLabel, start)) {
+				op = BinaryFormat.opExit;
+			} else if (token(segmentHeaderLabel, start)) {
+				code = (int) number();
+				op = BinaryFormat.opSegmentHeader;
+			} else if (token(segmentBodyLabel, start)) {
+				op = BinaryFormat.opSegmentBody;
+			}
+
+			// Past the line's newline.
+			position = lineEnd + 1;
+			if (op != -1) {
+				return op;
+			}
+		}
+		return end;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Makes the next whole line available from cursor to lineEnd.
+	 * Lines longer than the buffer are skipped.
+	 * @return false at the end of the input, or of its complete lines.
+	 */
+	private boolean nextLine() throws IOException {
+		while (true) {
+			for (int i = position ; i < limit ; i++) {
+				if (buffer[i] == '\n') {
+					cursor = position;
+					lineEnd = i;
+					return true;
+				}
+			}
+			if (eof) {
+				if (position < limit) {
+					System.err.println("The recording ends in an incomplete line, which is left out.");
+					position = limit;
+				}
+				return false;
+			}
+			if (position == 0 && limit == buffer.length) {
+				// No newline in a whole buffer; drop it and find the next line.
+				limit = 0;
+				skipLine();
+				continue;
+			}
+			fill();
+		}
+	}
+
+	// Moves the unread bytes to the front and reads more after them.
+	private void fill() throws IOException {
+		System.arraycopy(buffer, position, buffer, 0, limit - position);
+		limit -= position;
+		position = 0;
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private void skipLine() throws IOException {
+		while (true) {
+			int read = in.read(buffer, 0, buffer.length);
+			if (read < 0) {
+				eof = true;
+				position = 0;
+				limit = 0;
+				return;
+			}
+			for (int i = 0 ; i < read ; i++) {
+				if (buffer[i] == '\n') {
+					position = i + 1;
+					limit = read;
+					return;
+				}
+			}
+		}
+	}
+
+	// True if the line starts with word followed by a separator; cursor is then after it.
+	private boolean token(byte[] word, int start) {
+		int end = start + word.length;
+		if (end > lineEnd) {
+			return false;
+		}
+		for (int i = 0 ; i < word.length ; i++) {
+			if (buffer[start + i] != word[i]) {
+				return false;
+			}
+		}
+		if (end < lineEnd && !isSeparator(buffer[end])) {
+			return false;
+		}
+		cursor = end;
+		return true;
+	}
+
+	// Decodes the next number on the line, after any separators.
+	private long number() throws IOException {
+		int i = cursor;
+		while (i < lineEnd && isSeparator(buffer[i])) {
+			i++;
+		}
+		boolean negative = i < lineEnd && buffer[i] == '-';
+		if (negative) {
+			i++;
+		}
+		int digits = i;
+		long value = 0;
+		while (i < lineEnd && buffer[i] >= '0' && buffer[i] <= '9') {
+			value = value * 10 + (buffer[i] - '0');
+			i++;
+		}
+		if (i == digits) {
+			throw new IOException("Missing number in recording.");
+		}
+		cursor = i;
+		return negative ? -value : value;
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
@@ -0,0 +1,14 @@
+package player;
+
+/**
+ * How {@link Waiter} finishes a wait, trading CPU time for timing accuracy.
+ */
+public final class WaitMode {
+	// Parks until just before the deadline, then spins for the rest.
+	public static final int PRECISE = 0;
+	// Only parks, stopping the typical park overshoot before the deadline.
+	public static final int CPU_FRIENDLY = 1;
+
+	private WaitMode() {
+	}
+}
@@ -0,0 +1,166 @@
+package player;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for System.nanoTime deadlines more accurately than Robot.delay,
+ * which only sleeps whole milliseconds and overshoots on top of that.
+ *
+ * On construction it measures how late LockSupport.parkNanos wakes up on
+ * this machine. In {@link WaitMode#PRECISE} mode it parks until that much
+ * before the deadline and spins on the clock for the rest; the spin never
+ * runs longer than {@link #maxSpin}. In {@link WaitMode#CPU_FRIENDLY} mode
+ * it never spins and stops parking when the typical overshoot would take
+ * it past the deadline.
+ *
+ * How far each wait ended from its deadline is kept to report the
+ * accuracy reached.
+ */
+public class Waiter {
+	// Park lengths measured at startup, in nanoseconds, and rounds of each.
+	private static final long[] calibrationParks = { 50000, 200000, 1000000 };
+	private static final int calibrationRounds = 16;
+	// Longest the final spin of a wait may take, in nanoseconds.
+	public static final long maxSpin = 2000000;
+
+	private final int mode;
+	private long meanOvershoot;
+	private long highOvershoot;
+	// Time before a deadline at which parking stops.
+	private long margin;
+
+	private long waits = 0;
+	private long totalError = 0;
+	private long maxLate = 0;
+	private long maxEarly = 0;
+	private long spinning = 0;
+
+	/**
+	 * @param mode a {@link WaitMode}.
+	 */
+	public Waiter(int mode) {
+		this.mode = mode;
+		calibrate();
+	}
+
+	/**
+	 * Waits the way the given waiter does, with the same calibration, but
+	 * keeps its own accuracy counts.
+	 */
+	public Waiter(Waiter calibrated) {
+		this.mode = calibrated.mode;
+		this.meanOvershoot = calibrated.meanOvershoot;
+		this.highOvershoot = calibrated.highOvershoot;
+		this.margin = calibrated.margin;
+	}
+
+	/**
+	 * Measures the park overshoot again, e.g. after the system load changed.
+	 */
+	public void calibrate() {
+		long[] overshoots = new long[calibrationParks.length * calibrationRounds];
+		int n = 0;
+		long total = 0;
+		for (int round = 0 ; round < calibrationRounds ; round++) {
+			for (long park : calibrationParks) {
+				long start = System.nanoTime();
+				LockSupport.parkNanos(park);
+				long overshoot = Math.max(0, System.nanoTime() - start - park);
+				overshoots[n++] = overshoot;
+				total += overshoot;
+			}
+		}
+		Arrays.sort(overshoots);
+		meanOvershoot = total / n;
+		// A wake-up later than nine in ten leaves a little spin, not a late event.
+		highOvershoot = overshoots[n * 9 / 10];
+		margin = mode == WaitMode.PRECISE ? Math.min(highOvershoot, maxSpin) : meanOvershoot;
+	}
+
+	/**
+	 * Returns at the deadline, or right away if it has passed.
+	 */
+	public void waitUntil(long deadline) {
+		long now = System.nanoTime();
+		if (deadline - now <= 0) {
+			return;
+		}
+		while (deadline - now > margin) {
+			LockSupport.parkNanos(deadline - now - margin);
+			// An interrupt would keep park from parking; the deadline still stands.
+			Thread.interrupted();
+			now = System.nanoTime();
+		}
+		if (mode == WaitMode.PRECISE) {
+			long spin = now;
+			// No Thread.onSpinWait before Java 9; margin bounds the spin.
+			while (deadline - now > 0) {
+				now = System.nanoTime();
+			}
+			spinning += now - spin;
+		}
+
+		long error = now - deadline;
+		waits++;
+		totalError += Math.abs(error);
+		if (error > maxLate) {
+			maxLate = error;
+		}
+		if (-error > maxEarly) {
+			maxEarly = -error;
+		}
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Mean time parkNanos woke up late during calibration, in nanoseconds.
+	 */
+	public long getMeanOvershoot() {
+		return meanOvershoot;
+	}
+
+	/**
+	 * Time before a deadline at which parking stops, in nanoseconds.
+	 */
+	public long getMargin() {
+		return margin;
+	}
+
+	/**
+	 * Mean distance between the end of a wait and its deadline, in nanoseconds.
+	 */
+	public long getMeanError() {
+		return waits == 0 ? 0 : totalError / waits;
+	}
+
+	public long getMaxLate() {
+		return maxLate;
+	}
+
+	public long getMaxEarly() {
+		return maxEarly;
+	}
+
+	/**
+	 * Time spent spinning over all waits, in nanoseconds.
+	 */
+	public long getSpinning() {
+		return spinning;
+	}
+
+	public String report() {
+		return "Waiter: " + (mode == WaitMode.PRECISE ? "precise" : "CPU friendly")
+				+ ", park overshoot mean " + micros(meanOvershoot) + " us, 90% " + micros(highOvershoot)
+				+ " us, margin " + micros(margin) + " us; waits ended mean " + micros(getMeanError())
+				+ " us off, max late " + micros(maxLate) + " us, max early " + micros(maxEarly)
+				+ " us over " + waits + " waits, " + (spinning / 1000) / 1000.0 + " ms spinning";
+	}
+
+	private static double micros(long nanos) {
+		return (nanos / 100) / 10.0;
+	}
+}
@@ -2,6 +2,11 @@ package program;
 
 import gui.UI;
 
+import java.io.IOException;
+
+import player.MainPlayer;
+import recorder.PathSimplifier;
+
 public class MainProgram {
 	public static String astart;
 	public static void main(String[] args) {
@@ -10,9 +15,69 @@ public class MainProgram {
 		{
 			if(args[0].equals("-play"))
 			{
+				// -play macro.txt [-speed multiple], e.g. -speed 10 to play ten times faster.
+				if(!(args.length == 2 || (args.length == 4 && args[2].equals("-speed"))))
+				{
+					usage();
+				}
 				astart = System.getProperty("user.dir") + "\\" + args[1];
+				if(args.length == 4)
+				{
+					try
+					{
+						MainPlayer.speed = Double.parseDouble(args[3]);
+					}
+					catch(NumberFormatException nfx)
+					{
+						MainPlayer.speed = Double.NaN;
+					}
+					if(!(MainPlayer.speed >= MainPlayer.minSpeed && MainPlayer.speed <= MainPlayer.maxSpeed))
+					{
+						System.err.println("Speed must be between " + MainPlayer.minSpeed + " and " + MainPlayer.maxSpeed + ", not " + args[3] + ".");
+
+						System.exit(1);
+					}
+				}
+			}
+			else if(args[0].equals("-simplify"))
+			{
+				// -simplify macro.txt [tolerance in pixels], then exit without opening the window.
+				if(args.length < 2 || args.length > 3)
+				{
+					usage();
+				}
+				double tolerance = 1;
+				if(args.length == 3)
+				{
+					try
+					{
+						tolerance = Double.parseDouble(args[2]);
+					}
+					catch(NumberFormatException nfx)
+					{
+						tolerance = Double.NaN;
+					}
+					if(!(tolerance >= 0))
+					{
+						System.err.println("Tolerance must be a number of pixels, not " + args[2] + ".");
+						usage();
+					}
+				}
+				PathSimplifier.simplify(System.getProperty("user.dir") + "\\" + args[1], tolerance);
+				return;
+			}
+			else
+			{
+				usage();
 			}
 		}
+		catch(IOException iox)
+		{
+			System.err.println("Cannot simplify " + args[1] + ".");
+			System.err.println(iox.getMessage());
+
+			System.exit(1);
+		}
 		catch(Exception e)
 		{
 			System.out.println("No arguments");
@@ -21,4 +86,11 @@ public class MainProgram {
 		
 		UI.run();
 	}
+	
+	private static void usage()
+	{
+		System.err.println("Usage: MainProgram [-play macro.txt [-speed multiple] | -simplify macro.txt [tolerance]]");
+
+		System.exit(1);
+	}
 }
\ No newline at end of file
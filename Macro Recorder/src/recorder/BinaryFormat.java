@@ -0,0 +1,89 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Layout of the binary recording format.
+ *
+ * A file starts with the magic bytes "MREC", a version byte and a flags
+ * byte. Then every event is an opcode byte followed by its operands, and
+ * the wait since the previous event as a separate WAIT opcode.
+ *
+ * Operands are varints. Coordinates are zig-zag encoded deltas from the
+ * previous MOVE and waits are zig-zag encoded deltas from the previous
+ * WAIT, so the steady stream of small moves and similar waits mostly
+ * takes one byte per number.
+ */
+public final class BinaryFormat {
+	public static final byte[] magic = { 'M', 'R', 'E', 'C' };
+	public static final int version = 1;
+	public static final String extension = ".mrec";
+
+	// Header flags.
+	public static final int flagMicros = 1;
+
+	// Opcodes, the event ones match EventType.
+	public static final int opMove = EventType.MOVE;
+	public static final int opMousePress = EventType.MOUSE_PRESS;
+	public static final int opMouseRelease = EventType.MOUSE_RELEASE;
+	public static final int opScroll = EventType.SCROLL;
+	public static final int opKeyPress = EventType.KEY_PRESS;
+	public static final int opKeyRelease = EventType.KEY_RELEASE;
+	public static final int opExit = EventType.EXIT;
+	public static final int opWait = 8;
+	// Segment header start with its index, and header end.
+	public static final int opSegmentHeader = 9;
+	public static final int opSegmentBody = 10;
+	// Keyboard modifier mask, a varint, written when it changes.
+	public static final int opModifiers = EventType.MODIFIERS;
+	// Key autorepeat was collapsed when recording, so the player regenerates it.
+	public static final int opCollapsedRepeats = 12;
+
+	private BinaryFormat() {
+	}
+
+	/**
+	 * True if the stream starts with the binary magic. The stream must
+	 * support mark/reset; it is left at its starting position.
+	 */
+	public static boolean isBinary(InputStream in) throws IOException {
+		in.mark(magic.length);
+		try {
+			for (int i = 0 ; i < magic.length ; i++) {
+				if (in.read() != magic[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @throws IOException at the end of the stream, including a truncated varint.
+	 */
+	public static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0 ; shift < 64 ; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("Truncated recording.");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint.");
+	}
+}
@@ -0,0 +1,82 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes recordings in the {@link BinaryFormat}, encoded straight into a
+ * reusable buffer.
+ */
+public class BinaryRecordingWriter extends StreamRecordingWriter {
+	private int lastX = 0;
+	private int lastY = 0;
+	private long lastWait = 0;
+
+	/**
+	 * Writes to any stream, e.g. a compressing one. Takes ownership of it.
+	 * @param micros store waits in microseconds instead of milliseconds.
+	 */
+	public BinaryRecordingWriter(OutputStream stream, boolean micros) throws IOException {
+		this(stream, null, micros);
+	}
+
+	/**
+	 * @param file the file stream ends up in, forced by {@link #sync()}; null if none.
+	 */
+	public BinaryRecordingWriter(OutputStream stream, ChannelOutputStream file, boolean micros) throws IOException {
+		super(stream, file, micros);
+		out.put(BinaryFormat.magic);
+		out.put(BinaryFormat.version);
+		out.put(micros ? BinaryFormat.flagMicros : 0);
+	}
+
+	@Override
+	protected void encode(int type, int x, int y, int code, long wait) throws IOException {
+		out.put(type);
+		switch (type) {
+			case EventType.MOVE:
+				out.putVarint(BinaryFormat.zigZag(x - lastX));
+				out.putVarint(BinaryFormat.zigZag(y - lastY));
+				lastX = x;
+				lastY = y;
+				break;
+			case EventType.SCROLL:
+				out.putVarint(BinaryFormat.zigZag(code));
+				break;
+			default:
+				out.putVarint(code);
+				break;
+		}
+
+		out.put(BinaryFormat.opWait);
+		out.putVarint(BinaryFormat.zigZag(wait - lastWait));
+		lastWait = wait;
+	}
+
+	@Override
+	protected void encodeModifiers(int mask) throws IOException {
+		out.put(BinaryFormat.opModifiers);
+		out.putVarint(mask);
+	}
+
+	@Override
+	protected void encodeCollapsedRepeats() throws IOException {
+		out.put(BinaryFormat.opCollapsedRepeats);
+	}
+
+	@Override
+	protected void encodeExit() throws IOException {
+		out.put(BinaryFormat.opExit);
+	}
+
+	@Override
+	protected void encodeSegmentHeader(int index) throws IOException {
+		out.put(BinaryFormat.opSegmentHeader);
+		out.putVarint(index);
+	}
+
+	@Override
+	protected void encodeSegmentBody() throws IOException {
+		out.put(BinaryFormat.opSegmentBody);
+	}
+}
@@ -0,0 +1,96 @@
+package recorder;
+
+/**
+ * Timestamps recorded events from the time the native hook saw them
+ * (NativeInputEvent.getWhen, in milliseconds) instead of the time the
+ * listener got to run, so a backed up dispatch queue doesn't squash or
+ * stretch the recorded waits.
+ *
+ * Native times are mapped onto the System.nanoTime timeline using the
+ * smallest capture-to-dispatch lag seen so far. They only count whole
+ * milliseconds, so within its millisecond an event is placed by its
+ * dispatch time, which keeps microsecond waits finer than a millisecond.
+ * Events without a usable native time fall back to the dispatch time. The lag of every event is
+ * kept to report how far behind the dispatcher was during the session.
+ */
+public class CaptureClock {
+	private static final long nanosPerMilli = 1000000;
+
+	private boolean anchored = false;
+	private long offset;
+	private long lastWhen;
+	private long lastStamp;
+
+	private long events = 0;
+	private long fallbacks = 0;
+	private long totalSkew = 0;
+	private long maxSkew = 0;
+
+	/**
+	 * @param when the native event time, or 0 if it has none.
+	 * @return the capture time of the event on the System.nanoTime timeline.
+	 */
+	public synchronized long stamp(long when) {
+		long now = System.nanoTime();
+		long stamp;
+
+		if (when <= 0) {
+			fallbacks++;
+			stamp = now;
+		} else {
+			// Rebase if the native clock started over (e.g. tick count wrap).
+			if (!anchored || when < lastWhen) {
+				offset = now - when * nanosPerMilli;
+				anchored = true;
+			}
+			lastWhen = when;
+
+			long lag = now - when * nanosPerMilli;
+			if (lag < offset) {
+				offset = lag;
+			}
+			// Dispatch time, but never past the end of the native millisecond.
+			stamp = Math.min(now, when * nanosPerMilli + offset + nanosPerMilli - 1);
+		}
+
+		// Never go backwards, and never ahead of the dispatch time.
+		stamp = Math.min(Math.max(stamp, lastStamp), now);
+		lastStamp = stamp;
+
+		long skew = now - stamp;
+		events++;
+		totalSkew += skew;
+		if (skew > maxSkew) {
+			maxSkew = skew;
+		}
+		return stamp;
+	}
+
+	public synchronized long getEvents() {
+		return events;
+	}
+
+	public synchronized long getFallbacks() {
+		return fallbacks;
+	}
+
+	/**
+	 * Mean delay between capture and dispatch, in nanoseconds.
+	 */
+	public synchronized long getMeanSkew() {
+		return events == 0 ? 0 : totalSkew / events;
+	}
+
+	/**
+	 * Largest delay between capture and dispatch, in nanoseconds.
+	 */
+	public synchronized long getMaxSkew() {
+		return maxSkew;
+	}
+
+	public synchronized String report() {
+		return "Dispatch skew: mean " + (getMeanSkew() / 1000) / 1000.0 + " ms, max "
+				+ (maxSkew / 1000) / 1000.0 + " ms over " + events + " events ("
+				+ fallbacks + " without native time)";
+	}
+}
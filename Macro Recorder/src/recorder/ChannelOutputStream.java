@@ -0,0 +1,73 @@
+package recorder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a recording file through a {@link FileChannel}, so it can be
+ * forced to the storage device with {@link #sync()}. Callers buffer; every
+ * write goes straight to the channel.
+ */
+public class ChannelOutputStream extends OutputStream {
+	private final FileChannel channel;
+	private final SyncStats stats;
+	private final boolean syncOnClose;
+	private final byte[] single = new byte[1];
+	private long written = 0;
+
+	/**
+	 * @param append write at the end of an existing file instead of truncating it.
+	 * @param syncOnClose force the file before closing it.
+	 */
+	public ChannelOutputStream(String filepath, boolean append, boolean syncOnClose, SyncStats stats) throws IOException {
+		this.channel = new FileOutputStream(filepath, append).getChannel();
+		this.stats = stats;
+		this.syncOnClose = syncOnClose;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		stats.wrote(len);
+		written += len;
+	}
+
+	/**
+	 * Bytes written through this stream, not counting what the file held before.
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * Forces everything written so far to the storage device.
+	 */
+	public void sync() throws IOException {
+		long start = System.nanoTime();
+		channel.force(false);
+		stats.synced(System.nanoTime() - start);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (syncOnClose && channel.isOpen()) {
+				sync();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package recorder;
+
+/**
+ * Where the recorder listeners put the events they capture. Implementations
+ * are called from the native dispatch thread and must not block.
+ */
+public interface EventBuffer {
+	/**
+	 * The fields are the ones described in {@link EventQueue.Handler}.
+	 * @return false if the event had to be dropped.
+	 */
+	boolean offer(int type, int x, int y, int code, long time);
+}
@@ -0,0 +1,168 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes recording output straight into a reusable {@link ByteBuffer}:
+ * decimal digits, varints, opcodes and text are written byte by byte, so
+ * encoding an event allocates nothing. The buffer is written to the stream
+ * whenever it fills up and on {@link #flush()}.
+ *
+ * Text is encoded as UTF-8; line breaks use the platform separator, like
+ * BufferedWriter.newLine did.
+ */
+public class EventEncoder {
+	private static final byte[] lineSeparator = RecordingFormat.ascii(System.getProperty("line.separator"));
+	// Enough for any long in decimal, with its sign.
+	private static final int maxDigits = 20;
+
+	private final OutputStream out;
+	private final ByteBuffer buffer;
+	private final byte[] digits = new byte[maxDigits];
+	private long drained = 0;
+
+	/**
+	 * Takes ownership of the stream.
+	 */
+	public EventEncoder(OutputStream out, int capacity) {
+		this.out = out;
+		this.buffer = ByteBuffer.allocate(Math.max(capacity, 64));
+	}
+
+	/**
+	 * Bytes the stream is given at most at once.
+	 */
+	public int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Bytes encoded but not written to the stream yet.
+	 */
+	public int pending() {
+		return buffer.position();
+	}
+
+	/**
+	 * Bytes encoded so far, written to the stream or not.
+	 */
+	public long size() {
+		return drained + buffer.position();
+	}
+
+	public EventEncoder put(int b) throws IOException {
+		ensure(1);
+		buffer.put((byte) b);
+		return this;
+	}
+
+	public EventEncoder put(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			ensure(1);
+			int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+		return this;
+	}
+
+	public EventEncoder putDecimal(long value) throws IOException {
+		ensure(maxDigits);
+		if (value == 0) {
+			buffer.put((byte) '0');
+			return this;
+		}
+		// Digits are taken from the negative value, which also covers Long.MIN_VALUE.
+		boolean negative = value < 0;
+		if (!negative) {
+			value = -value;
+		}
+		int i = maxDigits;
+		while (value != 0) {
+			digits[--i] = (byte) ('0' - value % 10);
+			value /= 10;
+		}
+		if (negative) {
+			digits[--i] = '-';
+		}
+		buffer.put(digits, i, maxDigits - i);
+		return this;
+	}
+
+	/**
+	 * Read back by {@link BinaryFormat#readVarint}.
+	 */
+	public EventEncoder putVarint(long value) throws IOException {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+		return this;
+	}
+
+	public EventEncoder putText(String text) throws IOException {
+		int length = text.length();
+		for (int i = 0 ; i < length ; i++) {
+			ensure(4);
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, text.charAt(++i));
+				buffer.put((byte) (0xF0 | (cp >> 18)));
+				buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (cp & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+		return this;
+	}
+
+	public EventEncoder newLine() throws IOException {
+		return put(lineSeparator);
+	}
+
+	/**
+	 * Writes the encoded bytes to the stream and flushes it.
+	 */
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		try {
+			drain();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (buffer.position() > 0) {
+			out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			drained += buffer.position();
+			buffer.clear();
+		}
+	}
+}
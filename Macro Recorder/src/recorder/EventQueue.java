@@ -0,0 +1,107 @@
+package recorder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer/single-consumer ring of captured events.
+ *
+ * The producer is JNativeHook's dispatch thread, which only copies a few
+ * primitives into preallocated columns and returns. The consumer is the
+ * {@link WriterThread}, which formats and writes them in batches.
+ * When the ring is full the event is dropped and counted rather than
+ * blocking the dispatch thread.
+ */
+public class EventQueue implements EventBuffer {
+	/**
+	 * Receives the events drained from the queue.
+	 * code holds the button, wheel rotation or AWT key code; for key events
+	 * x holds the native key code instead of a position.
+	 */
+	public interface Handler {
+		void event(int type, int x, int y, int code, long time) throws IOException;
+	}
+
+	private final int mask;
+	private final int[] types;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] codes;
+	private final long[] times;
+
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long dropped = 0;
+	private volatile int maxDepth = 0;
+
+	/**
+	 * @param capacity rounded up to the next power of two.
+	 */
+	public EventQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		types = new int[size];
+		xs = new int[size];
+		ys = new int[size];
+		codes = new int[size];
+		times = new long[size];
+	}
+
+	/**
+	 * Called from the producer thread only.
+	 * @return false if the queue was full and the event was dropped.
+	 */
+	@Override
+	public boolean offer(int type, int x, int y, int code, long time) {
+		long t = tail.get();
+		int depth = (int) (t - head.get());
+		if (depth > mask) {
+			dropped = dropped + 1;
+			return false;
+		}
+		int i = (int) t & mask;
+		types[i] = type;
+		xs[i] = x;
+		ys[i] = y;
+		codes[i] = code;
+		times[i] = time;
+		tail.lazySet(t + 1);
+		if (depth + 1 > maxDepth) {
+			maxDepth = depth + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Called from the consumer thread only. Hands every available event to
+	 * the handler and releases the slots once the batch is done.
+	 * @return number of events drained.
+	 */
+	public int drain(Handler handler) throws IOException {
+		long h = head.get();
+		long t = tail.get();
+		long n = t - h;
+		for (long k = h ; k < t ; k++) {
+			int i = (int) k & mask;
+			handler.event(types[i], xs[i], ys[i], codes[i], times[i]);
+		}
+		head.lazySet(t);
+		return (int) n;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+}
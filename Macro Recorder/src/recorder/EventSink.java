@@ -0,0 +1,17 @@
+package recorder;
+
+import java.io.IOException;
+
+/**
+ * Consumer of captured events fed by its own {@link SinkQueue}, e.g. a
+ * file, an in-memory analyzer or a socket. Events arrive as described in
+ * {@link EventQueue.Handler}, on the sink's thread.
+ */
+public interface EventSink extends EventQueue.Handler {
+	/**
+	 * Called after every batch of events.
+	 */
+	void flush() throws IOException;
+
+	void close() throws IOException;
+}
@@ -0,0 +1,187 @@
+package recorder;
+
+import java.util.Arrays;
+
+/**
+ * In-memory session buffer holding captured events as parallel primitive
+ * columns (type, x, y, code and time), the same layout as
+ * {@link EventQueue} but unbounded. The columns grow a chunk at a time, so
+ * appending never copies what is already stored, and chunks are kept for
+ * reuse after {@link #clear()}.
+ *
+ * Events are only formatted when the store is written out, which leaves
+ * room for cheap post-processing such as simplification before anything
+ * touches the disk. Times are absolute, so removing an event simply adds
+ * its time to the wait of the next one.
+ *
+ * Not thread safe; owned by the writer thread.
+ */
+public class EventStore {
+	private static final int chunkShift = 14;
+	private static final int chunkSize = 1 << chunkShift;
+	private static final int chunkMask = chunkSize - 1;
+
+	private int[][] types = new int[4][];
+	private int[][] xs = new int[4][];
+	private int[][] ys = new int[4][];
+	private int[][] codes = new int[4][];
+	private long[][] times = new long[4][];
+	private int chunks = 0;
+	private int size = 0;
+
+	// Events appended per type and moves simplified away, over the whole session.
+	private final long[] appended = new long[EventType.EXIT + 1];
+	private long simplified = 0;
+
+	public void append(int type, int x, int y, int code, long time) {
+		int chunk = size >>> chunkShift;
+		if (chunk == chunks) {
+			grow();
+		}
+		int i = size & chunkMask;
+		types[chunk][i] = type;
+		xs[chunk][i] = x;
+		ys[chunk][i] = y;
+		codes[chunk][i] = code;
+		times[chunk][i] = time;
+		size++;
+		if (type >= 0 && type < appended.length) {
+			appended[type]++;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Forgets the stored events but keeps the chunks and the session counts.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	public int getType(int index) {
+		return types[index >>> chunkShift][index & chunkMask];
+	}
+
+	public int getX(int index) {
+		return xs[index >>> chunkShift][index & chunkMask];
+	}
+
+	public int getY(int index) {
+		return ys[index >>> chunkShift][index & chunkMask];
+	}
+
+	public int getCode(int index) {
+		return codes[index >>> chunkShift][index & chunkMask];
+	}
+
+	public long getTime(int index) {
+		return times[index >>> chunkShift][index & chunkMask];
+	}
+
+	/**
+	 * Ramer-Douglas-Peucker simplification of every run of stored moves, like
+	 * {@link PathSimplifier} does for text files. The first and last move of
+	 * a run are kept.
+	 * @param tolerance maximum distance in pixels between the original and the simplified path.
+	 * @return the number of moves removed.
+	 */
+	public int simplify(double tolerance) {
+		int window = PathSimplifier.window;
+		int[] px = new int[Math.min(window, Math.max(size, 1))];
+		int[] py = new int[px.length];
+		boolean[] keep = new boolean[px.length];
+		int[] stack = new int[2 * px.length];
+		double toleranceSq = tolerance * tolerance;
+
+		// Kept events are moved down in place; the write index never passes the read index.
+		int read = 0;
+		int write = 0;
+		while (read < size) {
+			if (getType(read) != EventType.MOVE) {
+				copy(read++, write++);
+				continue;
+			}
+			int end = read;
+			while (end < size && getType(end) == EventType.MOVE) {
+				end++;
+			}
+
+			// Long runs are done in windows sharing their last point with the next one.
+			int start = read;
+			while (true) {
+				int count = Math.min(window, end - start);
+				for (int k = 0 ; k < count ; k++) {
+					px[k] = getX(start + k);
+					py[k] = getY(start + k);
+				}
+				PathSimplifier.reduce(px, py, count, toleranceSq, keep, stack);
+
+				boolean last = start + count == end;
+				int written = last ? count : count - 1;
+				for (int k = 0 ; k < written ; k++) {
+					if (keep[k]) {
+						copy(start + k, write++);
+					}
+				}
+				if (last) {
+					break;
+				}
+				start += count - 1;
+			}
+			read = end;
+		}
+
+		int removed = size - write;
+		size = write;
+		simplified += removed;
+		return removed;
+	}
+
+	/**
+	 * Event counts for the whole session.
+	 */
+	public String report() {
+		return "Events stored: " + (appended[EventType.MOVE] + appended[EventType.MOUSE_PRESS]
+				+ appended[EventType.MOUSE_RELEASE] + appended[EventType.SCROLL]
+				+ appended[EventType.KEY_PRESS] + appended[EventType.KEY_RELEASE])
+				+ " (moves " + appended[EventType.MOVE]
+				+ ", buttons " + (appended[EventType.MOUSE_PRESS] + appended[EventType.MOUSE_RELEASE])
+				+ ", scrolls " + appended[EventType.SCROLL]
+				+ ", keys " + (appended[EventType.KEY_PRESS] + appended[EventType.KEY_RELEASE])
+				+ "), moves simplified away: " + simplified;
+	}
+
+	private void copy(int from, int to) {
+		if (from == to) {
+			return;
+		}
+		int fc = from >>> chunkShift;
+		int fi = from & chunkMask;
+		int tc = to >>> chunkShift;
+		int ti = to & chunkMask;
+		types[tc][ti] = types[fc][fi];
+		xs[tc][ti] = xs[fc][fi];
+		ys[tc][ti] = ys[fc][fi];
+		codes[tc][ti] = codes[fc][fi];
+		times[tc][ti] = times[fc][fi];
+	}
+
+	private void grow() {
+		if (chunks == types.length) {
+			types = Arrays.copyOf(types, chunks * 2);
+			xs = Arrays.copyOf(xs, chunks * 2);
+			ys = Arrays.copyOf(ys, chunks * 2);
+			codes = Arrays.copyOf(codes, chunks * 2);
+			times = Arrays.copyOf(times, chunks * 2);
+		}
+		types[chunks] = new int[chunkSize];
+		xs[chunks] = new int[chunkSize];
+		ys[chunks] = new int[chunkSize];
+		codes[chunks] = new int[chunkSize];
+		times[chunks] = new long[chunkSize];
+		chunks++;
+	}
+}
@@ -0,0 +1,19 @@
+package recorder;
+
+/**
+ * Event types captured by the recorder listeners.
+ */
+public final class EventType {
+	public static final int MOVE = 1;
+	public static final int MOUSE_PRESS = 2;
+	public static final int MOUSE_RELEASE = 3;
+	public static final int SCROLL = 4;
+	public static final int KEY_PRESS = 5;
+	public static final int KEY_RELEASE = 6;
+	public static final int EXIT = 7;
+	// Keyboard modifier mask changed; code holds the new mask.
+	public static final int MODIFIERS = 11;
+
+	private EventType() {
+	}
+}
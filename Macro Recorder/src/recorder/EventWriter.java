@@ -0,0 +1,64 @@
+package recorder;
+
+import java.io.IOException;
+
+/**
+ * Output format of a recording, fed by the {@link WriterThread}.
+ */
+public interface EventWriter {
+	/**
+	 * Length of one unit of the waits passed to {@link #write}, in nanoseconds.
+	 */
+	long getWaitUnit();
+
+	/**
+	 * Writes one event followed by the wait since the previous one.
+	 * The fields are the ones described in {@link EventQueue.Handler}.
+	 */
+	void write(int type, int x, int y, int code, long wait) throws IOException;
+
+	/**
+	 * Writes the keyboard modifier mask (the NativeInputEvent key masks)
+	 * from here on, without a wait.
+	 */
+	void writeModifiers(int mask) throws IOException;
+
+	/**
+	 * Marks the recording as made with key autorepeat collapsed, so the
+	 * player regenerates the repeats. Written before the events.
+	 */
+	void writeCollapsedRepeats() throws IOException;
+
+	/**
+	 * Writes the end of recording marker.
+	 */
+	void writeExit() throws IOException;
+
+	/**
+	 * Starts the header of a segment, which restores the cursor and the
+	 * held keys and buttons so the segment can be played on its own.
+	 */
+	void writeSegmentHeader(int index) throws IOException;
+
+	/**
+	 * Ends the segment header; the recorded events follow.
+	 */
+	void writeSegmentBody() throws IOException;
+
+	/**
+	 * Bytes of the recording so far: what was written, buffered or not,
+	 * after any compression. Journals count their committed records, not the
+	 * chunks mapped ahead of them.
+	 */
+	long getSize();
+
+	void flush() throws IOException;
+
+	/**
+	 * Flushes and forces what was written so far to the storage device,
+	 * if the writer knows how.
+	 */
+	void sync() throws IOException;
+
+	void close() throws IOException;
+}
@@ -0,0 +1,57 @@
+package recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands every captured event to several buffers, e.g. the queue of the
+ * recording file and the {@link SinkQueue}s of other consumers. Each one
+ * applies its own overflow handling, so a full one doesn't stop the
+ * others from getting the event.
+ */
+public class FanOut implements EventBuffer {
+	private final List<EventBuffer> buffers = new ArrayList<EventBuffer>();
+	private final List<SinkQueue> sinks = new ArrayList<SinkQueue>();
+
+	/**
+	 * Adds a buffer; call before recording starts.
+	 */
+	public void add(EventBuffer buffer) {
+		buffers.add(buffer);
+		if (buffer instanceof SinkQueue) {
+			sinks.add((SinkQueue) buffer);
+		}
+	}
+
+	/**
+	 * @return true if at least one buffer took the event.
+	 */
+	@Override
+	public boolean offer(int type, int x, int y, int code, long time) {
+		boolean taken = false;
+		for (int i = 0 ; i < buffers.size() ; i++) {
+			taken |= buffers.get(i).offer(type, x, y, code, time);
+		}
+		return taken;
+	}
+
+	/**
+	 * Finishes every sink queue added, writing out what they still hold.
+	 */
+	public void finish() {
+		for (SinkQueue sink : sinks) {
+			sink.finish();
+		}
+	}
+
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		for (SinkQueue sink : sinks) {
+			if (report.length() > 0) {
+				report.append('\n');
+			}
+			report.append(sink.report());
+		}
+		return report.toString();
+	}
+}
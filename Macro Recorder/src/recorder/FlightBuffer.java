@@ -0,0 +1,216 @@
+package recorder;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fixed size circular buffer of the latest captured events, for the
+ * always-on flight recorder. The columns are allocated once up front and
+ * the oldest events are overwritten, so recording allocates nothing and
+ * never touches the disk until the last few minutes are dumped.
+ *
+ * Written by the native dispatch thread. A dump reads the buffer on its
+ * own thread, a chunk at a time under the lock, so the dispatch thread
+ * waits at most for one chunk to be copied.
+ */
+public class FlightBuffer implements EventBuffer {
+	// Memory taken by one event: type, x, y and code ints and the time.
+	public static final int recordBytes = 4 * 4 + 8;
+	// Events a dump reads per hold of the lock.
+	private static final int chunk = 4096;
+
+	private final int capacity;
+	private final int[] types;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] codes;
+	private final long[] times;
+	private long count = 0;
+
+	/**
+	 * @param maxBytes memory the buffer may use.
+	 */
+	public FlightBuffer(long maxBytes) {
+		capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, maxBytes / recordBytes));
+		types = new int[capacity];
+		xs = new int[capacity];
+		ys = new int[capacity];
+		codes = new int[capacity];
+		times = new long[capacity];
+	}
+
+	@Override
+	public synchronized boolean offer(int type, int x, int y, int code, long time) {
+		int i = (int) (count % capacity);
+		types[i] = type;
+		xs[i] = x;
+		ys[i] = y;
+		codes[i] = code;
+		times[i] = time;
+		count++;
+		return true;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Number of events offered so far. A dump taken now covers the events
+	 * before it; this is all the dispatch thread does for a dump.
+	 */
+	public synchronized long end() {
+		return count;
+	}
+
+	/**
+	 * Time of the oldest buffered event before end not older than the window
+	 * before the newest one, or -1 if there is none.
+	 */
+	public long windowStart(long end, long windowNanos) {
+		long start = -1;
+		long newest = 0;
+		long k = end - 1;
+		while (true) {
+			synchronized (this) {
+				long lowest = Math.max(oldest(), k - chunk + 1);
+				if (k < lowest) {
+					return start;
+				}
+				for ( ; k >= lowest ; k--) {
+					long time = times[index(k)];
+					if (start < 0) {
+						newest = time;
+					} else if (newest - time > windowNanos) {
+						return start;
+					}
+					start = time;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the events before end, from the first one at the given time on.
+	 * They are preceded by the mouse position and the keys, buttons and
+	 * modifiers held at that point, and followed by releases for whatever is
+	 * still held at the end, so the dump replays the same as the window it
+	 * covers and doesn't leave anything pressed.
+	 *
+	 * Events before the window are only read to find what was held. Any
+	 * event overwritten before the copy gets to it is lost.
+	 */
+	public EventQueue snapshot(long from, long end) {
+		int[] chunkTypes = new int[chunk];
+		int[] chunkXs = new int[chunk];
+		int[] chunkYs = new int[chunk];
+		int[] chunkCodes = new int[chunk];
+		long[] chunkTimes = new long[chunk];
+
+		EventStore window = new EventStore();
+		// Held AWT key codes with their native codes, and held buttons.
+		Map<Integer, Integer> keys = new LinkedHashMap<Integer, Integer>();
+		Set<Integer> buttons = new LinkedHashSet<Integer>();
+		boolean moved = false;
+		int lastX = 0;
+		int lastY = 0;
+		int modifiers = 0;
+		boolean started = false;
+		long last = from;
+
+		long k = 0;
+		while (k < end) {
+			int n;
+			synchronized (this) {
+				k = Math.max(k, oldest());
+				n = (int) Math.max(0, Math.min(chunk, end - k));
+				for (int j = 0 ; j < n ; j++) {
+					int i = index(k + j);
+					chunkTypes[j] = types[i];
+					chunkXs[j] = xs[i];
+					chunkYs[j] = ys[i];
+					chunkCodes[j] = codes[i];
+					chunkTimes[j] = times[i];
+				}
+			}
+			if (n == 0) {
+				break;
+			}
+			k += n;
+
+			for (int j = 0 ; j < n ; j++) {
+				int type = chunkTypes[j];
+				if (!started && chunkTimes[j] >= from) {
+					// The state the window starts in, as SegmentedWriter restores it for a segment.
+					started = true;
+					if (moved) {
+						window.append(EventType.MOVE, lastX, lastY, 0, from);
+					}
+					for (Map.Entry<Integer, Integer> key : keys.entrySet()) {
+						window.append(EventType.KEY_PRESS, key.getValue(), 0, key.getKey(), from);
+					}
+					for (int button : buttons) {
+						window.append(EventType.MOUSE_PRESS, 0, 0, button, from);
+					}
+					if (modifiers != 0) {
+						window.append(EventType.MODIFIERS, 0, 0, modifiers, from);
+					}
+				}
+				if (started) {
+					window.append(type, chunkXs[j], chunkYs[j], chunkCodes[j], chunkTimes[j]);
+					last = chunkTimes[j];
+				}
+
+				switch (type) {
+					case EventType.MOVE:
+						moved = true;
+						lastX = chunkXs[j];
+						lastY = chunkYs[j];
+						break;
+					case EventType.KEY_PRESS:
+						keys.put(chunkCodes[j], chunkXs[j]);
+						break;
+					case EventType.KEY_RELEASE:
+						keys.remove(chunkCodes[j]);
+						break;
+					case EventType.MOUSE_PRESS:
+						buttons.add(chunkCodes[j]);
+						break;
+					case EventType.MOUSE_RELEASE:
+						buttons.remove(chunkCodes[j]);
+						break;
+					case EventType.MODIFIERS:
+						modifiers = chunkCodes[j];
+						break;
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, Integer> key : keys.entrySet()) {
+			window.append(EventType.KEY_RELEASE, key.getValue(), 0, key.getKey(), last);
+		}
+		for (int button : buttons) {
+			window.append(EventType.MOUSE_RELEASE, 0, 0, button, last);
+		}
+		if (modifiers != 0) {
+			window.append(EventType.MODIFIERS, 0, 0, 0, last);
+		}
+		window.append(EventType.EXIT, 0, 0, 0, last);
+
+		EventQueue queue = new EventQueue(window.size());
+		for (int i = 0 ; i < window.size() ; i++) {
+			queue.offer(window.getType(i), window.getX(i), window.getY(i), window.getCode(i), window.getTime(i));
+		}
+		return queue;
+	}
+
+	private long oldest() {
+		return Math.max(0, count - capacity);
+	}
+
+	private int index(long k) {
+		return (int) (k % capacity);
+	}
+}
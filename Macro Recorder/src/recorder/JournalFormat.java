@@ -0,0 +1,170 @@
+package recorder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of the recording journal, a file of fixed size records written
+ * through a memory mapping by {@link JournalWriter}.
+ *
+ * The header holds the magic bytes "MJRN", a version, flags and the
+ * committed length: the number of record bytes known to be complete. Each
+ * record holds an opcode, x, y, code, the wait since the previous event
+ * and a check value. A record only counts once the committed length covers
+ * it and its check matches, so a recording cut short by a crash loses at
+ * most its last event instead of ending in garbage.
+ */
+public final class JournalFormat {
+	public static final byte[] magic = { 'M', 'J', 'R', 'N' };
+	public static final int version = 1;
+	public static final String extension = ".mjrn";
+
+	// Header flags, as in BinaryFormat.
+	public static final int flagMicros = BinaryFormat.flagMicros;
+
+	public static final int headerSize = 32;
+	public static final int versionOffset = 4;
+	public static final int flagsOffset = 8;
+	public static final int committedOffset = 16;
+
+	// Record fields: opcode, x, y, code, wait, check and padding.
+	public static final int recordSize = 32;
+	public static final int waitOffset = 16;
+	public static final int checkOffset = 24;
+
+	private JournalFormat() {
+	}
+
+	/**
+	 * True if the stream starts with the journal magic. The stream must
+	 * support mark/reset; it is left at its starting position.
+	 */
+	public static boolean isJournal(InputStream in) throws IOException {
+		in.mark(magic.length);
+		try {
+			for (int i = 0 ; i < magic.length ; i++) {
+				if (in.read() != magic[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Check value of a record. Never 0 for an all zero record, so the
+	 * unwritten end of a mapping is never taken for an event.
+	 */
+	public static int check(int op, int x, int y, int code, long wait) {
+		int h = 0x5EED1E55;
+		h = (h ^ op) * 0x01000193;
+		h = (h ^ x) * 0x01000193;
+		h = (h ^ y) * 0x01000193;
+		h = (h ^ code) * 0x01000193;
+		h = (h ^ (int) wait) * 0x01000193;
+		h = (h ^ (int) (wait >>> 32)) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Drops whatever follows the last complete record of a journal: records
+	 * past the committed length, a torn record and the unused end of the
+	 * last mapped chunk. The file is only opened for writing if there is
+	 * something to drop; a journal that can't be written is left as it is
+	 * and read up to the returned length.
+	 * @return the committed length after recovery.
+	 */
+	public static long recover(String filepath) throws IOException {
+		long valid;
+		long committed;
+		long size;
+		RandomAccessFile file = new RandomAccessFile(filepath, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(headerSize);
+			read(channel, header, 0);
+			if (header.hasRemaining()) {
+				throw new IOException("Truncated journal header.");
+			}
+			int fileVersion = header.getInt(versionOffset);
+			if (fileVersion != version) {
+				throw new IOException("Unsupported journal version " + fileVersion + ".");
+			}
+
+			committed = header.getLong(committedOffset);
+			size = channel.size();
+			long available = (size - headerSize) / recordSize * recordSize;
+			long limit = Math.max(0, Math.min(committed, available));
+
+			// Keep records up to the first one whose check doesn't match.
+			ByteBuffer records = ByteBuffer.allocate(recordSize * 2048);
+			valid = 0;
+			while (valid < limit) {
+				records.clear();
+				records.limit((int) Math.min(records.capacity(), limit - valid));
+				read(channel, records, headerSize + valid);
+				records.flip();
+				int read = records.limit() / recordSize * recordSize;
+				int good = 0;
+				while (good < read && isValid(records, good)) {
+					good += recordSize;
+				}
+				valid += good;
+				if (good < read || read == 0) {
+					break;
+				}
+			}
+		} finally {
+			file.close();
+		}
+
+		if (valid == committed && size == headerSize + valid) {
+			return valid;
+		}
+		try {
+			file = new RandomAccessFile(filepath, "rw");
+		} catch (FileNotFoundException fnfx) {
+			// Read only; readers stop at the returned length anyway.
+			return valid;
+		}
+		try {
+			FileChannel channel = file.getChannel();
+			if (valid != committed) {
+				ByteBuffer marker = ByteBuffer.allocate(8);
+				marker.putLong(0, valid);
+				channel.write(marker, committedOffset);
+			}
+			try {
+				channel.truncate(headerSize + valid);
+			} catch (IOException iox) {
+				// Still mapped by a writer on some platforms; the committed length is what counts.
+			}
+		} finally {
+			file.close();
+		}
+		return valid;
+	}
+
+	// Fills the buffer from the given file position, short only at the end of the file.
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position() - start) < 0) {
+				return;
+			}
+		}
+	}
+
+	private static boolean isValid(ByteBuffer records, int offset) {
+		int op = records.getInt(offset);
+		return op >= EventType.MOVE && op <= BinaryFormat.opCollapsedRepeats && op != BinaryFormat.opWait
+				&& records.getInt(offset + checkOffset) == check(op, records.getInt(offset + 4),
+						records.getInt(offset + 8), records.getInt(offset + 12), records.getLong(offset + waitOffset));
+	}
+}
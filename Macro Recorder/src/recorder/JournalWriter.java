@@ -0,0 +1,175 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes recordings as a {@link JournalFormat} journal. Records are stored
+ * into a memory mapping of the file, which grows a chunk at a time, and the
+ * committed length in the header is bumped after every record. Writing an
+ * event is a few memory stores; the operating system writes the pages back
+ * on its own, or when {@link #sync()} forces them.
+ */
+public class JournalWriter implements EventWriter {
+	// Mapped at once; a whole number of records.
+	private static final int chunkSize = JournalFormat.recordSize * 32768;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final boolean micros;
+	private final boolean syncOnClose;
+	private final SyncStats stats;
+
+	private MappedByteBuffer chunk = null;
+	private int chunks = 0;
+	// Chunks written to since the last sync.
+	private final List<MappedByteBuffer> dirty = new ArrayList<MappedByteBuffer>();
+	private long committed = 0;
+	private boolean closed = false;
+
+	/**
+	 * Starts a new journal, replacing the file. If the file can't be
+	 * truncated, e.g. on Windows while a journal written to it before is
+	 * still mapped, the new journal is written over the old one; only the
+	 * committed length counts, so nothing of the old one is read back.
+	 * @param micros store waits in microseconds instead of milliseconds.
+	 * @param syncOnClose force the journal before closing it.
+	 */
+	public JournalWriter(String filepath, boolean micros, boolean syncOnClose, SyncStats stats) throws IOException {
+		this.file = new RandomAccessFile(filepath, "rw");
+		this.channel = file.getChannel();
+		this.micros = micros;
+		this.syncOnClose = syncOnClose;
+		this.stats = stats;
+
+		try {
+			file.setLength(0);
+		} catch (IOException iox) {
+			// Mapped elsewhere; the header below resets the committed length.
+		}
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, JournalFormat.headerSize);
+		header.put(JournalFormat.magic);
+		header.putInt(JournalFormat.versionOffset, JournalFormat.version);
+		header.putInt(JournalFormat.flagsOffset, micros ? JournalFormat.flagMicros : 0);
+		header.putLong(JournalFormat.committedOffset, 0);
+	}
+
+	@Override
+	public long getWaitUnit() {
+		return micros ? 1000 : MainRecorder.convertRate;
+	}
+
+	@Override
+	public synchronized void write(int type, int x, int y, int code, long wait) throws IOException {
+		append(type, x, y, code, wait);
+	}
+
+	@Override
+	public synchronized void writeModifiers(int mask) throws IOException {
+		append(BinaryFormat.opModifiers, 0, 0, mask, 0);
+	}
+
+	@Override
+	public synchronized void writeCollapsedRepeats() throws IOException {
+		append(BinaryFormat.opCollapsedRepeats, 0, 0, 0, 0);
+	}
+
+	@Override
+	public synchronized void writeExit() throws IOException {
+		append(BinaryFormat.opExit, 0, 0, 0, 0);
+	}
+
+	@Override
+	public synchronized void writeSegmentHeader(int index) throws IOException {
+		append(BinaryFormat.opSegmentHeader, 0, 0, index, 0);
+	}
+
+	@Override
+	public synchronized void writeSegmentBody() throws IOException {
+		append(BinaryFormat.opSegmentBody, 0, 0, 0, 0);
+	}
+
+	/**
+	 * The committed records with the header, not the mapped chunks.
+	 */
+	@Override
+	public synchronized long getSize() {
+		return JournalFormat.headerSize + committed;
+	}
+
+	/**
+	 * Nothing to do; the mapping is the file.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public synchronized void sync() throws IOException {
+		if (closed) {
+			return;
+		}
+		long start = System.nanoTime();
+		for (MappedByteBuffer buffer : dirty) {
+			buffer.force();
+		}
+		header.force();
+		stats.synced(System.nanoTime() - start);
+
+		dirty.clear();
+		if (chunk != null) {
+			dirty.add(chunk);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (syncOnClose) {
+			sync();
+		}
+		closed = true;
+		// The mappings stay until they are collected; let go of them now.
+		chunk = null;
+		dirty.clear();
+		try {
+			// Drop the unused end of the last chunk, and whatever an older journal left after it.
+			channel.truncate(JournalFormat.headerSize + committed);
+		} catch (IOException iox) {
+			// Can't truncate a mapped file on some platforms; readers stop at the committed length.
+		}
+		file.close();
+	}
+
+	private void append(int op, int x, int y, int code, long wait) throws IOException {
+		if (closed) {
+			return;
+		}
+		if (chunk == null || !chunk.hasRemaining()) {
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+					JournalFormat.headerSize + (long) chunks * chunkSize, chunkSize);
+			chunks++;
+			dirty.add(chunk);
+		}
+
+		chunk.putInt(op);
+		chunk.putInt(x);
+		chunk.putInt(y);
+		chunk.putInt(code);
+		chunk.putLong(wait);
+		chunk.putInt(JournalFormat.check(op, x, y, code, wait));
+		chunk.putInt(0);
+
+		// Only now does the record count.
+		committed += JournalFormat.recordSize;
+		header.putLong(JournalFormat.committedOffset, committed);
+		stats.wrote(JournalFormat.recordSize);
+	}
+}
@@ -1,123 +1,131 @@
 package recorder;
 
-import org.jnativehook.GlobalScreen;
 import org.jnativehook.keyboard.NativeKeyEvent;
 import org.jnativehook.keyboard.NativeKeyListener;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.BufferedWriter;
-import java.awt.event.KeyEvent;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
 
 
 public class KeyRecorder implements NativeKeyListener {
-	private String filepath;
+	private EventBuffer queue;
+	private CaptureClock clock;
+	private MotionFilter motion;
+	private ModifierTracker modifiers;
+	private CountDownLatch stopped;
+	private int stopKey = NativeKeyEvent.VC_ESCAPE;
+	private int dumpKey = -1;
+	private Runnable dump = null;
 	private boolean skip = false;
-	private boolean exit = false;
-	
-	public KeyRecorder(String filepath){
-		this.filepath = filepath;
+	// Longest time between a press and its first autorepeat, or between two repeats.
+	private static final long repeatTimeout = 2000L * MainRecorder.convertRate;
+
+	// Native codes pressed and not released yet, to spot the OS autorepeat.
+	private final BitSet held = new BitSet();
+	// The OS only repeats the key pressed last; when it was pressed or last repeated.
+	private int lastPressed = -1;
+	private long lastPressedTime = 0;
+	private boolean collapseRepeats = true;
+	private long repeats = 0;
+
+	public KeyRecorder(EventBuffer queue, CaptureClock clock, MotionFilter motion, ModifierTracker modifiers, CountDownLatch stopped){
+		this.queue = queue;
+		this.clock = clock;
+		this.motion = motion;
+		this.modifiers = modifiers;
+		this.stopped = stopped;
+	}
+
+	/**
+	 * Ends the recording when the given key is released; the key itself is
+	 * not recorded. -1 for none, which records every key.
+	 */
+	public void setStopKey(int nativeCode) {
+		this.stopKey = nativeCode;
+	}
+
+	/**
+	 * Runs the dump action when the given key is released, instead of
+	 * recording the key.
+	 */
+	public void setDumpKey(int nativeCode, Runnable dump) {
+		this.dumpKey = nativeCode;
+		this.dump = dump;
+	}
+
+	/**
+	 * Whether presses of a key that is already down, sent by the OS while
+	 * a key is held, are left out. A hold is then recorded as one press and
+	 * its release, and the recording is marked so the player regenerates
+	 * the repeats.
+	 */
+	public void setCollapseRepeats(boolean collapseRepeats) {
+		this.collapseRepeats = collapseRepeats;
 	}
-	
+
+	/**
+	 * Autorepeated presses left out of the recording so far.
+	 */
+	public long getRepeats() {
+		return repeats;
+	}
+
 	@Override
 	public void nativeKeyPressed(NativeKeyEvent e) {
-        try {
-            long time = System.nanoTime();
-            long prevTime = MainRecorder.getTime();
-            MainRecorder.setTime(time);
-            time = Math.abs(time - prevTime);
-            int timeMs = (int) (time / MainRecorder.convertRate);
-            
-            BufferedWriter out = new BufferedWriter(new FileWriter(filepath, true));
-            
-            int keycode = e.getKeyCode();
-            String key = NativeKeyEvent.getKeyText(keycode);
-            boolean leave = false;
-            
-            if (key.equals("Shift")) {
-            	keycode = 16;
-            } else if (key.equals("Alt")) {
-            	keycode = 18;
-            } else if (key.equals("Escape")) {
-            	skip = true;
-            }
-            
-            if (!skip) {
-	            for (int i = 0 ; i < 16*16*16*16 && !leave ; i++) {
-	            	if (KeyEvent.getKeyText(i).equals(key)) {
-	            		keycode = i;
-	            		leave = true;
-	            	}
-	            }
-	            
-	            out.write("KeyPress " + keycode + " (" + key + ")");
-	            out.newLine();
-	            out.write("Wait " + timeMs);
-	            out.newLine();
-            } else {
-            	skip = false;
-            }
-	            
-            out.close();        
-	    }
-	    catch (IOException iox) {
-            System.err.println("Error writing.");
-            System.err.println(iox.getMessage());
-
-            System.exit(1);
-	    }
+		long time = clock.stamp(e.getWhen());
+
+		int nativeCode = e.getKeyCode();
+		if (nativeCode == dumpKey) {
+			return;
+		}
+		if (collapseRepeats && nativeCode >= 0 && held.get(nativeCode)) {
+			if (nativeCode == lastPressed && time - lastPressedTime <= repeatTimeout) {
+				lastPressedTime = time;
+				repeats++;
+				return;
+			}
+			// Not a repeat, so its release was missed, e.g. on a focus change; record it again.
+			held.clear(nativeCode);
+		}
+		motion.flush();
+		modifiers.update(e.getModifiers(), time);
+
+		if (nativeCode == stopKey) {
+			skip = true;
+		}
+
+		if (!skip) {
+			if (queue.offer(EventType.KEY_PRESS, nativeCode, 0, KeyTable.toAwt(nativeCode), time) && nativeCode >= 0) {
+				held.set(nativeCode);
+				lastPressed = nativeCode;
+				lastPressedTime = time;
+			}
+		} else {
+			skip = false;
+		}
 	}
 
 	@Override
 	public void nativeKeyReleased(NativeKeyEvent e) {
-        try {
-            long time = System.nanoTime();
-            long prevTime = MainRecorder.getTime();
-            MainRecorder.setTime(time);
-            time = Math.abs(time - prevTime);
-            int timeMs = (int) (time / MainRecorder.convertRate);
-            
-            BufferedWriter out = new BufferedWriter(new FileWriter(filepath, true));
-            
-            int keycode = e.getKeyCode();
-            String key = NativeKeyEvent.getKeyText(keycode);
-            boolean leave = false;
-            
-            if (key.equals("Shift")) {
-            	keycode = 16;
-            } else if (key.equals("Alt")) {
-            	keycode = 18;
-            } else if (key.equals("Esc")) {
-            	out.write("Exit");
-            	out.newLine();
-            	exit = true;
-            }
-            
-            if (!exit) {
-	            for (int i = 0 ; i < 16*16*16*16 && !leave ; i++) {
-	            	if (KeyEvent.getKeyText(i).equals(key)) {
-	            		keycode = i;
-	            		leave = true;
-	            	}
-	            }
-	            
-	            out.write("KeyRelease " + keycode + " (" + key + ")");
-	            out.newLine();
-	            out.write("Wait " + timeMs);
-	            out.newLine();
-        	} else {
-        		// Need to reset to false so that if you record again it won't just stop after any button
-        		exit = false;
-        		GlobalScreen.unregisterNativeHook();
-        	}
-            
-            out.close();
-	    }
-	    catch (IOException iox) {
-            System.err.println("Error writing.");
-            System.err.println(iox.getMessage());
-
-            System.exit(1);
-	    }
+		long time = clock.stamp(e.getWhen());
+
+		int nativeCode = e.getKeyCode();
+		if (nativeCode == dumpKey) {
+			dump.run();
+			return;
+		}
+		if (nativeCode >= 0) {
+			held.clear(nativeCode);
+		}
+		motion.flush();
+		modifiers.update(e.getModifiers(), time);
+
+		if (nativeCode == stopKey) {
+			queue.offer(EventType.EXIT, 0, 0, 0, time);
+			stopped.countDown();
+			return;
+		}
+		queue.offer(EventType.KEY_RELEASE, nativeCode, 0, KeyTable.toAwt(nativeCode), time);
 	}
 
 	@Override
@@ -0,0 +1,123 @@
+package recorder;
+
+import java.awt.event.KeyEvent;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jnativehook.keyboard.NativeKeyEvent;
+
+/**
+ * Translation from JNativeHook key codes (NativeKeyEvent.VC_*) to AWT key
+ * codes (KeyEvent.VK_*), built once when the class is loaded.
+ *
+ * Keys are matched by their text, like the recorder always did, but the
+ * AWT side is only scanned once instead of on every keystroke. Modifiers
+ * are mapped by code, as their text depends on the platform and locale.
+ */
+public final class KeyTable {
+	/**
+	 * AWT key code Robot presses the Meta keys with: the Windows key on
+	 * Windows, Meta elsewhere.
+	 */
+	public static final int awtMeta = System.getProperty("os.name", "").startsWith("Windows")
+			? KeyEvent.VK_WINDOWS : KeyEvent.VK_META;
+
+	private static final int[] awtCodes;
+	private static final String[] names;
+
+	static {
+		// Lowest AWT key code for every AWT key text.
+		Map<String, Integer> awtByText = new HashMap<String, Integer>();
+		for (Field field : KeyEvent.class.getFields()) {
+			int code = constant(field, "VK_");
+			if (code < 0) {
+				continue;
+			}
+			String text = KeyEvent.getKeyText(code);
+			Integer known = awtByText.get(text);
+			if (known == null || code < known) {
+				awtByText.put(text, code);
+			}
+		}
+
+		int max = 0;
+		Field[] fields = NativeKeyEvent.class.getFields();
+		for (Field field : fields) {
+			max = Math.max(max, constant(field, "VC_"));
+		}
+
+		awtCodes = new int[max + 1];
+		names = new String[max + 1];
+		for (int i = 0 ; i <= max ; i++) {
+			awtCodes[i] = i;
+		}
+
+		for (Field field : fields) {
+			int code = constant(field, "VC_");
+			if (code < 0) {
+				continue;
+			}
+			String key = NativeKeyEvent.getKeyText(code);
+			names[code] = key;
+
+			if (awtByText.containsKey(key)) {
+				awtCodes[code] = awtByText.get(key);
+			}
+		}
+
+		awtCodes[NativeKeyEvent.VC_SHIFT_L] = KeyEvent.VK_SHIFT;
+		awtCodes[NativeKeyEvent.VC_SHIFT_R] = KeyEvent.VK_SHIFT;
+		awtCodes[NativeKeyEvent.VC_CONTROL_L] = KeyEvent.VK_CONTROL;
+		awtCodes[NativeKeyEvent.VC_CONTROL_R] = KeyEvent.VK_CONTROL;
+		awtCodes[NativeKeyEvent.VC_ALT_L] = KeyEvent.VK_ALT;
+		awtCodes[NativeKeyEvent.VC_ALT_R] = KeyEvent.VK_ALT;
+		awtCodes[NativeKeyEvent.VC_META_L] = awtMeta;
+		awtCodes[NativeKeyEvent.VC_META_R] = awtMeta;
+	}
+
+	private KeyTable() {
+	}
+
+	/**
+	 * Forces the table to be built before the first key event arrives.
+	 */
+	public static void load() {
+	}
+
+	/**
+	 * AWT key code to replay a native key code with. Keys without an AWT
+	 * equivalent keep their native code.
+	 */
+	public static int toAwt(int nativeCode) {
+		if (nativeCode >= 0 && nativeCode < awtCodes.length) {
+			return awtCodes[nativeCode];
+		}
+		return nativeCode;
+	}
+
+	/**
+	 * Same text as NativeKeyEvent.getKeyText, without the lookup.
+	 */
+	public static String name(int nativeCode) {
+		if (nativeCode >= 0 && nativeCode < names.length && names[nativeCode] != null) {
+			return names[nativeCode];
+		}
+		return NativeKeyEvent.getKeyText(nativeCode);
+	}
+
+	// Value of a public static int field whose name starts with prefix, or -1.
+	private static int constant(Field field, String prefix) {
+		int mod = field.getModifiers();
+		if (!field.getName().startsWith(prefix) || field.getType() != int.class
+				|| !Modifier.isStatic(mod) || !Modifier.isPublic(mod)) {
+			return -1;
+		}
+		try {
+			return field.getInt(null);
+		} catch (IllegalAccessException iax) {
+			return -1;
+		}
+	}
+}
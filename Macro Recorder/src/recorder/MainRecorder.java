@@ -1,62 +1,276 @@
 package recorder;
 
-import org.jnativehook.GlobalScreen; 
 import org.jnativehook.NativeHookException;
+import org.jnativehook.keyboard.NativeKeyEvent;
 
 import gui.UI;
 
 import java.awt.Frame;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.swing.SwingUtilities;
 import java.lang.String;
 
+/**
+ * Starts recordings from the GUI settings below, one {@link RecordingSession}
+ * at a time.
+ */
 public class MainRecorder {	
-	private static long time = 0;
 	public static final int convertRate = 1000000;
 	public static String root = System.getProperty("user.dir") + "\\";
 	public static String file = null;
+	// Record waits in microseconds instead of milliseconds. Millisecond waits
+	// lose no time either, as the remainder is carried into the next wait.
+	public static boolean microsecondWaits = false;
+	// Mouse moves closer than this many pixels to the last recorded one are dropped.
+	public static int moveMinDistance = 1;
+	// Mouse moves sooner than this many milliseconds after the last recorded one are dropped.
+	public static int moveMinInterval = 0;
+	// Record a held key as one press instead of one per OS autorepeat.
+	public static boolean collapseKeyRepeats = true;
+	// Native key code that stops a recording, -1 for none.
+	public static int stopKey = NativeKeyEvent.VC_ESCAPE;
+	// Simplify mouse paths to within this many pixels before they are written, 0 to keep them as recorded.
+	public static double simplifyTolerance = 0;
+	// Milliseconds between writes of the recorded events, 0 to keep them all in memory until recording stops.
+	public static long flushInterval = 1000;
+	// Write the compact binary format; files ending in .mrec always are.
+	public static boolean binaryFormat = false;
+	// Write a crash safe memory mapped journal; files ending in .mjrn always are.
+	public static boolean journalFormat = false;
+	// Gzip the recording as it is written; files ending in .gz always are.
+	public static boolean compress = false;
+	private static final String compressedExtension = ".gz";
+	// Roll to a new segment once the current one is this big, 0 for no limit.
+	public static long segmentMaxBytes = 0;
+	// Roll to a new segment once the current one covers this many milliseconds, 0 for no limit.
+	public static long segmentMaxMillis = 0;
+	// Memory the flight recorder may use for its buffer.
+	public static long flightMemory = 32L * 1024 * 1024;
+	// How much of the flight recorder buffer a dump writes.
+	public static int flightMinutes = 5;
+	// Native key code that dumps the flight recorder buffer.
+	public static int flightDumpKey = NativeKeyEvent.VC_SCROLL_LOCK;
+	// Native key code that stops the flight recorder, -1 for none. Esc is recorded like any other key there.
+	public static int flightStopKey = NativeKeyEvent.VC_PAUSE;
+	// When recordings are forced to disk, see SyncPolicy.
+	public static int syncPolicy = SyncPolicy.ON_STOP;
+	// Milliseconds for SyncPolicy.INTERVAL, events for SyncPolicy.EVENTS.
+	public static long syncEvery = 1000;
+	// Also stream the recording in the binary format to a consumer on this local port, 0 for none.
+	public static int streamPort = 0;
+	// Also hand the recording to this sink, e.g. a MemorySink for analysis, or null.
+	public static EventSink analyzer = null;
+	// Queue size and overflow policy (see OverflowPolicy) of the stream and analyzer sinks.
+	// BLOCK stalls capture while the analyzer is behind; the stream coalesces instead.
+	public static int sinkCapacity = 1 << 14;
+	public static int sinkPolicy = OverflowPolicy.COALESCE_MOTION;
+	// Number of events the listeners can get ahead of the writer thread.
+	public static int queueCapacity = 1 << 16;
+	// The last session started from here, for the GUI.
+	private static volatile RecordingSession session = null;
+	// Queue of the file written by the last recording started here.
+	private static volatile EventQueue queue = null;
 	
-	public static void setTime(long time) {
-		MainRecorder.time = time;
+	/**
+	 * Events waiting to be written by the current session.
+	 */
+	public static int getQueueDepth() {
+		EventQueue current = queue;
+		return current == null ? 0 : current.size();
 	}
 	
-	public static long getTime() {
-		return MainRecorder.time;
+	/**
+	 * Events lost by the current session because the queue was full.
+	 */
+	public static long getDroppedEvents() {
+		EventQueue current = queue;
+		return current == null ? 0 : current.getDropped();
+	}
+
+	private static EventWriter openWriter(String path, boolean binary, boolean compressed, SyncStats stats) throws IOException {
+		if (journalFormat || path.endsWith(JournalFormat.extension)) {
+			// Journals are mapped, so they are neither compressed nor appended to.
+			return new JournalWriter(path, microsecondWaits, syncPolicy != SyncPolicy.NONE, stats);
+		}
+		// Binary files have a header so they can't be appended to; gzip members can.
+		ChannelOutputStream file = new ChannelOutputStream(path, !binary, syncPolicy != SyncPolicy.NONE, stats);
+		OutputStream stream = file;
+		if (compressed) {
+			// Deflating happens on the writer thread, like the rest of the output.
+			// Periodic syncs need each flush to push out everything deflated so far.
+			boolean syncFlush = syncPolicy == SyncPolicy.INTERVAL || syncPolicy == SyncPolicy.EVENTS;
+			stream = new GZIPOutputStream(stream, 64 * 1024, syncFlush);
+		}
+		if (binary) {
+			return new BinaryRecordingWriter(stream, file, microsecondWaits);
+		}
+		return new RecordingWriter(stream, file, microsecondWaits);
+	}
+
+	/**
+	 * Blocks until the current recording has been stopped and written out.
+	 */
+	public static void await() throws InterruptedException {
+		RecordingSession current = session;
+		if (current != null) {
+			current.await();
+		}
 	}
 
+	/**
+	 * Starts recording and returns; the session ends when the stop key is
+	 * released.
+	 */
 	public static void record() {	
+		System.out.println(root);
+		
+		// One writer for the whole session, fed by the writer thread.
+		final String path = root + file;
+		final boolean compressed = compress || path.endsWith(compressedExtension);
+		final boolean binary = binaryFormat || path.endsWith(BinaryFormat.extension)
+				|| path.endsWith(BinaryFormat.extension + compressedExtension);
+		final boolean segmented = segmentMaxBytes > 0 || segmentMaxMillis > 0;
+		final SyncStats stats = new SyncStats();
+		EventWriter out = null;
 		try {
-            GlobalScreen.registerNativeHook();
-	    }
-	    catch (NativeHookException nhx) {
-	            System.err.println("There was a problem registering the native hook.");
-	            System.err.println(nhx.getMessage());
+			if (segmented) {
+				out = new SegmentedWriter(path, new SegmentedWriter.Opener() {
+					public EventWriter open(String filepath) throws IOException {
+						return openWriter(filepath, binary, compressed, stats);
+					}
+				}, segmentMaxBytes, segmentMaxMillis);
+			} else {
+				out = openWriter(path, binary, compressed, stats);
+			}
+		}
+		catch (IOException iox) {
+				System.err.println("Cannot open " + path + ".");
+				System.err.println(iox.getMessage());
+				
+				System.exit(1);
+		}
+		
+		long start = System.nanoTime();
+		final EventQueue queue = new EventQueue(queueCapacity);
+		MainRecorder.queue = queue;
+		WriterThread writer = new WriterThread(queue, out, start, flushInterval, simplifyTolerance);
+		writer.setSyncPolicy(syncPolicy, syncEvery);
+		
+		// Other consumers get their own queues, so they never hold up the file.
+		final FanOut fanOut = new FanOut();
+		fanOut.add(queue);
+		if (streamPort > 0) {
+			try {
+				// A consumer across a socket must never hold up capture.
+				int streamPolicy = sinkPolicy == OverflowPolicy.BLOCK ? OverflowPolicy.COALESCE_MOTION : sinkPolicy;
+				fanOut.add(startSink("socket " + streamPort, new SocketSink(streamPort, microsecondWaits, start), streamPolicy));
+			} catch (IOException iox) {
+				System.err.println("Cannot stream to port " + streamPort + ".");
+				System.err.println(iox.getMessage());
+			}
+		}
+		if (analyzer != null) {
+			fanOut.add(startSink("analyzer", analyzer, sinkPolicy));
+		}
+		
+		final RecordingSession recording = new RecordingSession(fanOut, writer);
+		recording.setOnStop(new Runnable() {
+			public void run() {
+				fanOut.finish();
+				System.out.println(fanOut.report());
+				System.out.println(recording.report());
+				System.out.println(stats.report());
+				System.out.println("Queue high-water mark: " + queue.getMaxDepth() + "/" + queue.capacity()
+						+ ", dropped events: " + queue.getDropped());
+				resetWindow();
+			}
+		});
+		start(recording);
+	}
 	
-	            System.exit(1);
-	    }
+	/**
+	 * Starts the flight recorder and returns. Input is kept in memory only,
+	 * up to flightMemory bytes, and releasing flightDumpKey writes the last
+	 * flightMinutes of it to a new recording in root. The session ends when
+	 * flightStopKey is released.
+	 */
+	public static void flight() {
 		System.out.println(root);
 		
-		time = System.nanoTime();
-		KeyRecorder keyListener = new KeyRecorder(root + file);
-		MouseRecorder mouseListener = new MouseRecorder(root + file);
-		MouseRecorder mouseMotionListener = new MouseRecorder(root + file);
-		ScrollRecorder mouseWheelListener = new ScrollRecorder(root + file);
+		final FlightBuffer buffer = new FlightBuffer(flightMemory);
+		System.out.println("Flight recorder holds " + buffer.capacity() + " events.");
 		
-	    GlobalScreen.getInstance().addNativeKeyListener(keyListener);
-	    GlobalScreen.getInstance().addNativeMouseListener(mouseListener);
-	    GlobalScreen.getInstance().addNativeMouseMotionListener(mouseMotionListener);
-	    GlobalScreen.getInstance().addNativeMouseWheelListener(mouseWheelListener);
-	    
-	    while (GlobalScreen.isNativeHookRegistered()) {
-	    	
-	    }
-	    
-	    // Need to remove the listeners that were added...
-	    GlobalScreen.getInstance().removeNativeKeyListener(keyListener);
-	    GlobalScreen.getInstance().removeNativeMouseListener(mouseListener);
-	    GlobalScreen.getInstance().removeNativeMouseMotionListener(mouseMotionListener);
-	    GlobalScreen.getInstance().removeNativeMouseWheelListener(mouseWheelListener);
-	    
-	    UI.gui.resetIcon();
-	    UI.gui.setState(Frame.NORMAL);
-	}
-
-}
\ No newline at end of file
+		final RecordingSession recording = new RecordingSession(buffer);
+		recording.setStopKey(flightStopKey);
+		recording.setDumpKey(flightDumpKey, new Runnable() {
+			public void run() {
+				// On the dispatch thread: only mark the end of the dump, copy and write it on another thread.
+				final long end = buffer.end();
+				final String path = root + "flight-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+						+ (journalFormat ? JournalFormat.extension : binaryFormat ? BinaryFormat.extension : ".txt");
+				
+				Thread dumper = new Thread("Flight Recorder Dump") {
+					public void run() {
+						long start = buffer.windowStart(end, flightMinutes * 60000L * convertRate);
+						if (start < 0) {
+							return;
+						}
+						EventQueue dump = buffer.snapshot(start, end);
+						try {
+							WriterThread writer = new WriterThread(dump, openWriter(path, binaryFormat, false, new SyncStats()), start);
+							writer.setCollapsedRepeats(collapseKeyRepeats);
+							writer.start();
+							writer.finish();
+							System.out.println("Dumped " + path);
+						} catch (IOException iox) {
+							System.err.println("Cannot open " + path + ".");
+							System.err.println(iox.getMessage());
+						}
+					}
+				};
+				dumper.start();
+			}
+		});
+		recording.setOnStop(new Runnable() {
+			public void run() {
+				System.out.println(recording.report());
+				resetWindow();
+			}
+		});
+		start(recording);
+	}
+	
+	private static SinkQueue startSink(String name, EventSink sink, int policy) {
+		SinkQueue sinkQueue = new SinkQueue(name, sink, sinkCapacity, policy);
+		sinkQueue.start();
+		return sinkQueue;
+	}
+	
+	private static void start(RecordingSession recording) {
+		session = recording;
+		try {
+			recording.start();
+		}
+		catch (NativeHookException nhx) {
+			System.err.println("There was a problem registering the native hook.");
+			System.err.println(nhx.getMessage());
+			
+			System.exit(1);
+		}
+	}
+	
+	private static void resetWindow() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				UI.gui.resetIcon();
+				UI.gui.setState(Frame.NORMAL);
+			}
+		});
+	}
+
+}
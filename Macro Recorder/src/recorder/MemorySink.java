@@ -0,0 +1,26 @@
+package recorder;
+
+/**
+ * Keeps the events it gets in an {@link EventStore}, for analysis in
+ * memory. Read the store once the sink queue is finished.
+ */
+public class MemorySink implements EventSink {
+	private final EventStore store = new EventStore();
+
+	@Override
+	public void event(int type, int x, int y, int code, long time) {
+		store.append(type, x, y, code, time);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public EventStore getStore() {
+		return store;
+	}
+}
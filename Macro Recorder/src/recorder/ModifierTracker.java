@@ -0,0 +1,40 @@
+package recorder;
+
+import org.jnativehook.NativeInputEvent;
+
+/**
+ * Records the keyboard modifier mask carried by every native event, but
+ * only when it changes, so a chord can be restored on playback even if
+ * some of its presses were never seen by the listeners.
+ *
+ * Only called from the native dispatch thread.
+ */
+public class ModifierTracker {
+	// Left and right Shift, Ctrl, Meta and Alt; the button masks are recorded as presses already.
+	public static final int keyMask = NativeInputEvent.SHIFT_MASK | NativeInputEvent.CTRL_MASK
+			| NativeInputEvent.META_MASK | NativeInputEvent.ALT_MASK;
+
+	private final EventBuffer queue;
+	private final MotionFilter motion;
+	private int modifiers = 0;
+
+	public ModifierTracker(EventBuffer queue, MotionFilter motion) {
+		this.queue = queue;
+		this.motion = motion;
+	}
+
+	/**
+	 * @param modifiers NativeInputEvent.getModifiers() of the event being recorded.
+	 */
+	public void update(int modifiers, long time) {
+		int mask = modifiers & keyMask;
+		if (mask == this.modifiers) {
+			return;
+		}
+		// A held back move happened before the change.
+		motion.flush();
+		if (queue.offer(EventType.MODIFIERS, 0, 0, mask, time)) {
+			this.modifiers = mask;
+		}
+	}
+}
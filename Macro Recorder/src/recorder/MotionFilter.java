@@ -0,0 +1,100 @@
+package recorder;
+
+/**
+ * Drops mouse moves at capture time that would not change the replayed
+ * path in a meaningful way: exact repeats of the last recorded position,
+ * moves closer than a minimum distance and moves arriving sooner than a
+ * minimum interval after the last recorded one.
+ *
+ * The latest dropped move is held back and recorded right before the next
+ * button, wheel or key event, so the cursor is always where it was when
+ * something was clicked or typed. Since waits are measured between the
+ * events actually recorded, the time of dropped moves ends up in the next
+ * Wait.
+ *
+ * Only called from the native dispatch thread.
+ */
+public class MotionFilter {
+	private final EventBuffer queue;
+	private final long minDistanceSq;
+	private final long minInterval;
+
+	private boolean recorded = false;
+	private int lastX;
+	private int lastY;
+	private long lastTime;
+
+	private boolean pending = false;
+	private int pendingX;
+	private int pendingY;
+	private long pendingTime;
+
+	private long dropped = 0;
+
+	/**
+	 * @param minDistance in pixels, 0 to only drop exact repeats.
+	 * @param minInterval in milliseconds, 0 for none.
+	 */
+	public MotionFilter(EventBuffer queue, int minDistance, int minInterval) {
+		this.queue = queue;
+		this.minDistanceSq = (long) minDistance * minDistance;
+		this.minInterval = (long) minInterval * MainRecorder.convertRate;
+	}
+
+	public void move(int x, int y, long time) {
+		if (recorded) {
+			long dx = x - lastX;
+			long dy = y - lastY;
+			long distanceSq = dx * dx + dy * dy;
+
+			if (distanceSq == 0) {
+				// Back where we last recorded, nothing left to catch up on.
+				pending = false;
+				dropped++;
+				return;
+			}
+			if (distanceSq < minDistanceSq || time - lastTime < minInterval) {
+				if (pending) {
+					dropped++;
+				}
+				pending = true;
+				pendingX = x;
+				pendingY = y;
+				pendingTime = time;
+				return;
+			}
+		}
+
+		if (pending) {
+			dropped++;
+			pending = false;
+		}
+		record(x, y, time);
+	}
+
+	/**
+	 * Records the held back move, if any. Call before any non-move event.
+	 */
+	public void flush() {
+		if (pending) {
+			pending = false;
+			record(pendingX, pendingY, pendingTime);
+		}
+	}
+
+	/**
+	 * Moves left out of the recording so far.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	private void record(int x, int y, long time) {
+		if (queue.offer(EventType.MOVE, x, y, 0, time)) {
+			recorded = true;
+			lastX = x;
+			lastY = y;
+			lastTime = time;
+		}
+	}
+}
@@ -2,106 +2,41 @@ package recorder;
 
 import org.jnativehook.mouse.NativeMouseEvent;
 import org.jnativehook.mouse.NativeMouseInputListener;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.BufferedWriter;
 
 public class MouseRecorder implements NativeMouseInputListener {
-	
-	private String filepath;
-	
-	public MouseRecorder(String filepath){
-		this.filepath = filepath;
+
+	private EventBuffer queue;
+	private CaptureClock clock;
+	private MotionFilter motion;
+	private ModifierTracker modifiers;
+
+	public MouseRecorder(EventBuffer queue, CaptureClock clock, MotionFilter motion, ModifierTracker modifiers){
+		this.queue = queue;
+		this.clock = clock;
+		this.motion = motion;
+		this.modifiers = modifiers;
 	}
-	
+
 	@Override
 	public void nativeMouseClicked(NativeMouseEvent e) {
 	}
 
 	@Override
 	public void nativeMousePressed(NativeMouseEvent e) {
-        try {
-            long time = System.nanoTime();
-            long prevTime = MainRecorder.getTime();
-            MainRecorder.setTime(time);
-            time = Math.abs(time - prevTime);
-            int timeMs = (int) (time / MainRecorder.convertRate);
-            
-            BufferedWriter out = new BufferedWriter(new FileWriter(filepath, true));
-                        
-            int button = e.getButton();            
-            
-            if (button==2) {
-            	button = 3;
-            } else if (button==3) {
-            	button = 2;
-            }
-            
-            out.write("MousePress " + button);
-            out.newLine();
-            out.write("Wait " + timeMs);
-            out.newLine();
-            out.close();
-	    }
-	    catch (IOException iox) {
-            System.err.println("Error writing.");
-            System.err.println(iox.getMessage());
+		long time = clock.stamp(e.getWhen());
 
-       		try {
-    			BufferedWriter out = new BufferedWriter(new FileWriter("a.txt", true));
-    			
-    			out.write("KeyRecorder error writing");
-    			out.newLine();
-    			out.close();
-    		} catch (IOException idox) {
-    			
-    		}
-            
-            System.exit(1);
-	    }
+		motion.flush();
+		modifiers.update(e.getModifiers(), time);
+		queue.offer(EventType.MOUSE_PRESS, e.getX(), e.getY(), toRobotButton(e.getButton()), time);
 	}
 
 	@Override
 	public void nativeMouseReleased(NativeMouseEvent e) {
-        try {
-            long time = System.nanoTime();
-            long prevTime = MainRecorder.getTime();
-            MainRecorder.setTime(time);
-            time = Math.abs(time - prevTime);
-            int timeMs = (int) (time / MainRecorder.convertRate);
-            
-            BufferedWriter out = new BufferedWriter(new FileWriter(filepath, true));
-                        
-            int button = e.getButton();            
-            
-            if (button==2) {
-            	button = 3;
-            } else if (button==3) {
-            	button = 2;
-            }
-            
-            out.write("MouseRelease " + button);
-            out.newLine();
-            out.write("Wait " + timeMs);
-            out.newLine();
-            out.close();
-	    }
-	    catch (IOException iox) {
-            System.err.println("Error writing.");
-            System.err.println(iox.getMessage());
+		long time = clock.stamp(e.getWhen());
 
-       		try {
-    			BufferedWriter out = new BufferedWriter(new FileWriter("a.txt", true));
-    			
-    			out.write("KeyRecorder error writing");
-    			out.newLine();
-    			out.close();
-    		} catch (IOException idox) {
-    			
-    		}
-            
-            System.exit(1);
-	    }
+		motion.flush();
+		modifiers.update(e.getModifiers(), time);
+		queue.offer(EventType.MOUSE_RELEASE, e.getX(), e.getY(), toRobotButton(e.getButton()), time);
 	}
 
 	@Override
@@ -112,39 +47,20 @@ public class MouseRecorder implements NativeMouseInputListener {
 
 	@Override
 	public void nativeMouseMoved(NativeMouseEvent e) {
-        try {
-            long time = System.nanoTime();
-            long prevTime = MainRecorder.getTime();
-            MainRecorder.setTime(time);
-            time = Math.abs(time - prevTime);
-            int timeMs = (int) (time / MainRecorder.convertRate);
-            
-            BufferedWriter out = new BufferedWriter(new FileWriter(filepath, true));
-            
-            int x = e.getX();
-            int y = e.getY();
-            out.write("Move " + x + " " + y);
-            out.newLine();
-            out.write("Wait " + timeMs);
-            out.newLine();
-            out.close();
-	    }
-	    catch (IOException iox) {
-            System.err.println("Error writing.");
-            System.err.println(iox.getMessage());
+		long time = clock.stamp(e.getWhen());
+
+		modifiers.update(e.getModifiers(), time);
+		motion.move(e.getX(), e.getY(), time);
+	}
 
-       		try {
-    			BufferedWriter out = new BufferedWriter(new FileWriter("a.txt", true));
-    			
-    			out.write("KeyRecorder error writing");
-    			out.newLine();
-    			out.close();
-    		} catch (IOException idox) {
-    			
-    		}
-            
-            System.exit(1);
-	    }	
+	// JNativeHook numbers the middle and right buttons the other way around.
+	private static int toRobotButton(int button) {
+		if (button==2) {
+			return 3;
+		} else if (button==3) {
+			return 2;
+		}
+		return button;
 	}
 
 }
@@ -0,0 +1,18 @@
+package recorder;
+
+/**
+ * What a {@link SinkQueue} does with a new event when it is full.
+ */
+public final class OverflowPolicy {
+	// Wait for room; nothing is lost, but the native dispatch thread waits in offer, so capture
+	// and every other consumer, the recording file included, stall while this sink is behind.
+	// Never used for the network stream.
+	public static final int BLOCK = 0;
+	// Forget the oldest queued event.
+	public static final int DROP_OLDEST = 1;
+	// Merge mouse moves into the latest queued one first, then drop the oldest event.
+	public static final int COALESCE_MOTION = 2;
+
+	private OverflowPolicy() {
+	}
+}
@@ -0,0 +1,205 @@
+package recorder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Ramer-Douglas-Peucker simplification of the mouse paths in a text
+ * recording.
+ *
+ * Every run of Move/Wait pairs between two other actions is reduced to the
+ * points needed to stay within the given tolerance of the original path.
+ * The first and last move of a run and every other action (presses,
+ * releases, scrolls, keys) are always kept. The waits of removed moves are
+ * added to the wait of the next kept move, so kept points still happen at
+ * the time they were recorded.
+ *
+ * The file is streamed; runs longer than the window are simplified in
+ * window sized pieces, so memory use does not depend on the recording.
+ */
+public class PathSimplifier {
+	static final int window = 4096;
+
+	private final double toleranceSq;
+
+	private final int[] xs = new int[window];
+	private final int[] ys = new int[window];
+	private final long[] waits = new long[window];
+	private final boolean[] keep = new boolean[window];
+	private final int[] stack = new int[2 * window];
+	private int size = 0;
+	private String waitLabel = "Wait";
+
+	private long movesIn = 0;
+	private long movesOut = 0;
+
+	/**
+	 * @param tolerance maximum distance in pixels between the original and the simplified path.
+	 */
+	public PathSimplifier(double tolerance) {
+		this.toleranceSq = tolerance * tolerance;
+	}
+
+	/**
+	 * Simplifies a text recording file in place. Other formats are refused
+	 * and left as they are.
+	 */
+	public static void simplify(String filepath, double tolerance) throws IOException {
+		if (RecordingFormat.of(filepath) != RecordingFormat.TEXT) {
+			throw new IOException(filepath + " is not a text recording; only text recordings can be simplified.");
+		}
+		File source = new File(filepath);
+		File temp = new File(filepath + ".tmp");
+		PathSimplifier simplifier = new PathSimplifier(tolerance);
+
+		BufferedReader in = new BufferedReader(new FileReader(source));
+		BufferedWriter out = new BufferedWriter(new FileWriter(temp));
+		try {
+			simplifier.simplify(in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+
+		if (!source.delete() || !temp.renameTo(source)) {
+			throw new IOException("Cannot replace " + filepath + " with " + temp.getPath() + ".");
+		}
+		System.out.println("Simplified " + filepath + ": " + simplifier.movesIn + " moves to " + simplifier.movesOut + ".");
+	}
+
+	public void simplify(BufferedReader in, BufferedWriter out) throws IOException {
+		String input = in.readLine();
+		while (input != null) {
+			String[] split = input.split(" ");
+			if (split[0].equals("Move") && split.length >= 3) {
+				if (size == window) {
+					flushWindow(out);
+				}
+				xs[size] = Integer.parseInt(split[1]);
+				ys[size] = Integer.parseInt(split[2]);
+				waits[size] = 0;
+				size++;
+				movesIn++;
+			} else if (size > 0 && (split[0].equals("Wait") || split[0].equals("WaitMicros"))) {
+				waits[size - 1] += Long.parseLong(split[1]);
+				waitLabel = split[0];
+			} else {
+				// Anything else ends the run and is kept as it is.
+				flushRun(out);
+				out.write(input);
+				out.newLine();
+			}
+			input = in.readLine();
+		}
+		flushRun(out);
+	}
+
+	public long getMovesIn() {
+		return movesIn;
+	}
+
+	public long getMovesOut() {
+		return movesOut;
+	}
+
+	// Writes the whole buffered run.
+	private void flushRun(BufferedWriter out) throws IOException {
+		if (size > 0) {
+			reduce();
+			write(out, size);
+			size = 0;
+		}
+	}
+
+	// Writes a full window but keeps its last point as the start of the next one.
+	private void flushWindow(BufferedWriter out) throws IOException {
+		reduce();
+		write(out, size - 1);
+		xs[0] = xs[size - 1];
+		ys[0] = ys[size - 1];
+		waits[0] = waits[size - 1];
+		size = 1;
+	}
+
+	private void write(BufferedWriter out, int count) throws IOException {
+		long wait = 0;
+		for (int i = 0 ; i < count ; i++) {
+			wait += waits[i];
+			if (keep[i]) {
+				out.write("Move " + xs[i] + " " + ys[i]);
+				out.newLine();
+				out.write(waitLabel + " " + wait);
+				out.newLine();
+				wait = 0;
+				movesOut++;
+			}
+		}
+		// Only possible when the window is split, as the last point is always kept.
+		if (count < size) {
+			waits[size - 1] += wait;
+		}
+	}
+
+	private void reduce() {
+		reduce(xs, ys, size, toleranceSq, keep, stack);
+	}
+
+	/**
+	 * Marks the points to keep in xs/ys[0, size).
+	 * @param stack room for 2 * size ints.
+	 */
+	static void reduce(int[] xs, int[] ys, int size, double toleranceSq, boolean[] keep, int[] stack) {
+		for (int i = 0 ; i < size ; i++) {
+			keep[i] = false;
+		}
+		keep[0] = true;
+		keep[size - 1] = true;
+
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = size - 1;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+
+			double maxSq = 0;
+			int index = -1;
+			for (int i = first + 1 ; i < last ; i++) {
+				double distSq = distanceSq(xs, ys, i, first, last);
+				if (distSq > maxSq) {
+					maxSq = distSq;
+					index = i;
+				}
+			}
+
+			if (index != -1 && maxSq > toleranceSq) {
+				keep[index] = true;
+				stack[top++] = first;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+	}
+
+	// Squared distance from point i to the segment between a and b.
+	private static double distanceSq(int[] xs, int[] ys, int i, int a, int b) {
+		double dx = xs[b] - xs[a];
+		double dy = ys[b] - ys[a];
+		double px = xs[i] - xs[a];
+		double py = ys[i] - ys[a];
+		double lengthSq = dx * dx + dy * dy;
+
+		if (lengthSq == 0) {
+			return px * px + py * py;
+		}
+		double t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSq));
+		double ex = px - t * dx;
+		double ey = py - t * dy;
+		return ex * ex + ey * ey;
+	}
+}
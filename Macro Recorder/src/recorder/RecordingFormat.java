@@ -0,0 +1,94 @@
+package recorder;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The kinds of recording file, told apart by their first bytes rather
+ * than their names. Everything that reads recordings asks here, so they
+ * never disagree about what a file is.
+ */
+public final class RecordingFormat {
+	// One action per line, see RecordingWriter.
+	public static final int TEXT = 0;
+	// See BinaryFormat.
+	public static final int BINARY = 1;
+	// A gzipped text or binary recording.
+	public static final int GZIP = 2;
+	// See JournalFormat.
+	public static final int JOURNAL = 3;
+	// A list of segments, see SegmentedWriter.
+	public static final int MANIFEST = 4;
+
+	private RecordingFormat() {
+	}
+
+	/**
+	 * @return the format of the file, TEXT if it is none of the others.
+	 */
+	public static int of(String filepath) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(filepath));
+		try {
+			if (JournalFormat.isJournal(in)) {
+				return JOURNAL;
+			}
+			if (BinaryFormat.isBinary(in)) {
+				return BINARY;
+			}
+			if (isGzip(in)) {
+				return GZIP;
+			}
+			if (isManifest(in)) {
+				return MANIFEST;
+			}
+			return TEXT;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Bytes of the labels of the text format, or any other ASCII text.
+	 */
+	public static byte[] ascii(String text) {
+		byte[] bytes = new byte[text.length()];
+		for (int i = 0 ; i < bytes.length ; i++) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * True if the stream starts with the gzip magic. The stream must
+	 * support mark/reset; it is left at its starting position.
+	 */
+	public static boolean isGzip(InputStream in) throws IOException {
+		in.mark(2);
+		try {
+			return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xFF)
+					&& in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+		} finally {
+			in.reset();
+		}
+	}
+
+	// The manifest line on its own; a text recording never starts with it.
+	private static boolean isManifest(InputStream in) throws IOException {
+		String magic = SegmentedWriter.manifestMagic;
+		in.mark(magic.length() + 1);
+		try {
+			for (int i = 0 ; i < magic.length() ; i++) {
+				if (in.read() != magic.charAt(i)) {
+					return false;
+				}
+			}
+			int next = in.read();
+			return next == '\n' || next == '\r';
+		} finally {
+			in.reset();
+		}
+	}
+}
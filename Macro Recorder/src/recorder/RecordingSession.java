@@ -0,0 +1,240 @@
+package recorder;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jnativehook.GlobalScreen;
+import org.jnativehook.NativeHookException;
+
+/**
+ * One recording: its clock, filters and listeners, the buffer they feed
+ * and, when it writes a file, the writer thread draining that buffer.
+ * Nothing is shared with other sessions except the native hook, which is
+ * registered while at least one session or playback holds it, so several
+ * sessions can record at once and playing a recording doesn't cut them off.
+ *
+ * A session ends when the stop key is released or {@link #stop()} is
+ * called, and can't be started again.
+ */
+public class RecordingSession {
+	// Holders of the native hook, sessions and playback alike, guarded by the class.
+	private static int hookUsers = 0;
+
+	private final EventBuffer buffer;
+	private final WriterThread writer;
+	private final CaptureClock clock = new CaptureClock();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private int moveMinDistance = MainRecorder.moveMinDistance;
+	private int moveMinInterval = MainRecorder.moveMinInterval;
+	private boolean collapseKeyRepeats = MainRecorder.collapseKeyRepeats;
+	private int stopKey = MainRecorder.stopKey;
+	private int dumpKey = -1;
+	private Runnable dump = null;
+	private Runnable onStop = null;
+
+	// Guarded by this; the listeners exist once the session is started.
+	private boolean started = false;
+	private MotionFilter motion;
+	private KeyRecorder keyListener;
+	private MouseRecorder mouseListener;
+	private ScrollRecorder mouseWheelListener;
+
+	/**
+	 * Records into a buffer feeding the given writer thread, e.g. its queue
+	 * or a {@link FanOut} including it; the session starts and finishes the
+	 * writer.
+	 */
+	public RecordingSession(EventBuffer buffer, WriterThread writer) {
+		this.buffer = buffer;
+		this.writer = writer;
+	}
+
+	/**
+	 * Records into a buffer the caller reads, e.g. a {@link FlightBuffer}.
+	 */
+	public RecordingSession(EventBuffer buffer) {
+		this.buffer = buffer;
+		this.writer = null;
+	}
+
+	/**
+	 * @param minDistance see {@link MotionFilter}.
+	 * @param minInterval see {@link MotionFilter}.
+	 */
+	public void setMotionFilter(int minDistance, int minInterval) {
+		this.moveMinDistance = minDistance;
+		this.moveMinInterval = minInterval;
+	}
+
+	public void setCollapseKeyRepeats(boolean collapseKeyRepeats) {
+		this.collapseKeyRepeats = collapseKeyRepeats;
+	}
+
+	/**
+	 * Native key code that ends the session when it is released, -1 for
+	 * none; the session then only ends with {@link #stop()}.
+	 */
+	public void setStopKey(int nativeCode) {
+		this.stopKey = nativeCode;
+	}
+
+	/**
+	 * Runs dump on the native dispatch thread when the given key is
+	 * released, instead of recording the key.
+	 */
+	public void setDumpKey(int nativeCode, Runnable dump) {
+		this.dumpKey = nativeCode;
+		this.dump = dump;
+	}
+
+	/**
+	 * Runs on the session thread once the listeners are removed and the
+	 * output is written.
+	 */
+	public void setOnStop(Runnable onStop) {
+		this.onStop = onStop;
+	}
+
+	/**
+	 * Registers the native hook unless it is held already. Unregistering the
+	 * hook stops every listener at once, so whatever needs it takes it here
+	 * and gives it back with {@link #releaseHook()} instead.
+	 */
+	public static synchronized void acquireHook() throws NativeHookException {
+		if (hookUsers == 0) {
+			GlobalScreen.registerNativeHook();
+		}
+		hookUsers++;
+	}
+
+	/**
+	 * Unregisters the native hook once nothing holds it anymore.
+	 */
+	public static synchronized void releaseHook() {
+		if (hookUsers > 0) {
+			hookUsers--;
+			if (hookUsers == 0) {
+				GlobalScreen.unregisterNativeHook();
+			}
+		}
+	}
+
+	/**
+	 * Unregisters the native hook whoever holds it, when the program exits.
+	 */
+	public static synchronized void closeHook() {
+		hookUsers = 0;
+		if (GlobalScreen.isNativeHookRegistered()) {
+			GlobalScreen.unregisterNativeHook();
+		}
+	}
+
+	/**
+	 * Takes the native hook, adds the listeners and returns.
+	 * @throws IllegalStateException if the session was started before.
+	 */
+	public synchronized void start() throws NativeHookException {
+		if (started) {
+			throw new IllegalStateException("The recording session was already started.");
+		}
+		acquireHook();
+		started = true;
+		KeyTable.load();
+
+		motion = new MotionFilter(buffer, moveMinDistance, moveMinInterval);
+		ModifierTracker modifiers = new ModifierTracker(buffer, motion);
+		keyListener = new KeyRecorder(buffer, clock, motion, modifiers, stopped);
+		mouseListener = new MouseRecorder(buffer, clock, motion, modifiers);
+		mouseWheelListener = new ScrollRecorder(buffer, clock, motion, modifiers);
+		keyListener.setCollapseRepeats(collapseKeyRepeats);
+		keyListener.setStopKey(stopKey);
+		if (dump != null) {
+			keyListener.setDumpKey(dumpKey, dump);
+		}
+
+		if (writer != null) {
+			writer.setCollapsedRepeats(collapseKeyRepeats);
+			writer.start();
+		}
+		GlobalScreen.getInstance().addNativeKeyListener(keyListener);
+		GlobalScreen.getInstance().addNativeMouseListener(mouseListener);
+		GlobalScreen.getInstance().addNativeMouseMotionListener(mouseListener);
+		GlobalScreen.getInstance().addNativeMouseWheelListener(mouseWheelListener);
+
+		// Wait for the stop key off the event dispatch thread, without polling the hook.
+		Thread session = new Thread("Recording Session") {
+			public void run() {
+				boolean done = false;
+				while (!done) {
+					try {
+						stopped.await();
+						done = true;
+					} catch (InterruptedException ix) {
+						// Only the stop key or stop() end a recording.
+					}
+				}
+				end();
+			}
+		};
+		session.setDaemon(true);
+		session.start();
+	}
+
+	/**
+	 * Ends the session as if the stop key was released, and returns.
+	 */
+	public void stop() {
+		stopped.countDown();
+	}
+
+	/**
+	 * Blocks until the session has stopped and its output is written.
+	 */
+	public void await() throws InterruptedException {
+		finished.await();
+	}
+
+	public boolean isFinished() {
+		return finished.getCount() == 0;
+	}
+
+	public EventBuffer getBuffer() {
+		return buffer;
+	}
+
+	public CaptureClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Mouse moves and key repeats left out of the recording.
+	 */
+	public synchronized String report() {
+		String report = clock.report();
+		if (started) {
+			report += "\nMouse moves filtered out: " + motion.getDropped()
+					+ "\nKey repeats collapsed: " + keyListener.getRepeats();
+		}
+		if (writer != null) {
+			report += "\n" + writer.report();
+		}
+		return report;
+	}
+
+	private void end() {
+		GlobalScreen.getInstance().removeNativeKeyListener(keyListener);
+		GlobalScreen.getInstance().removeNativeMouseListener(mouseListener);
+		GlobalScreen.getInstance().removeNativeMouseMotionListener(mouseListener);
+		GlobalScreen.getInstance().removeNativeMouseWheelListener(mouseWheelListener);
+		releaseHook();
+
+		if (writer != null) {
+			writer.finish();
+		}
+		if (onStop != null) {
+			onStop.run();
+		}
+		finished.countDown();
+	}
+}
@@ -0,0 +1,93 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the text recording format, one action per line.
+ * Lines are encoded straight into a reusable buffer, without building
+ * strings.
+ */
+public class RecordingWriter extends StreamRecordingWriter {
+	private static final byte[] move = RecordingFormat.ascii("Move ");
+	private static final byte[] mousePress = RecordingFormat.ascii("MousePress ");
+	private static final byte[] mouseRelease = RecordingFormat.ascii("MouseRelease ");
+	private static final byte[] scroll = RecordingFormat.ascii("Scroll ");
+	private static final byte[] keyPress = RecordingFormat.ascii("KeyPress ");
+	private static final byte[] keyRelease = RecordingFormat.ascii("KeyRelease ");
+	private static final byte[] waitMillis = RecordingFormat.ascii("Wait ");
+	private static final byte[] waitMicros = RecordingFormat.ascii("WaitMicros ");
+	private static final byte[] modifiers = RecordingFormat.ascii("Modifiers ");
+	private static final byte[] collapsedRepeats = RecordingFormat.ascii("CollapsedRepeats");
+	private static final byte[] exit = RecordingFormat.ascii("Exit");
+	private static final byte[] segmentHeader = RecordingFormat.ascii("SegmentHeader ");
+	private static final byte[] segmentBody = RecordingFormat.ascii("SegmentBody");
+
+	/**
+	 * Writes to any stream, e.g. a compressing one. Takes ownership of it.
+	 * @param micros write waits as "WaitMicros &lt;us&gt;" instead of "Wait &lt;ms&gt;".
+	 */
+	public RecordingWriter(OutputStream stream, boolean micros) {
+		this(stream, null, micros);
+	}
+
+	/**
+	 * @param file the file stream ends up in, forced by {@link #sync()}; null if none.
+	 */
+	public RecordingWriter(OutputStream stream, ChannelOutputStream file, boolean micros) {
+		super(stream, file, micros);
+	}
+
+	@Override
+	protected void encode(int type, int x, int y, int code, long wait) throws IOException {
+		switch (type) {
+			case EventType.MOVE:
+				out.put(move).putDecimal(x).put(' ').putDecimal(y);
+				break;
+			case EventType.MOUSE_PRESS:
+				out.put(mousePress).putDecimal(code);
+				break;
+			case EventType.MOUSE_RELEASE:
+				out.put(mouseRelease).putDecimal(code);
+				break;
+			case EventType.SCROLL:
+				out.put(scroll).putDecimal(code);
+				break;
+			case EventType.KEY_PRESS:
+				out.put(keyPress).putDecimal(code).put(' ').put('(').putText(KeyTable.name(x)).put(')');
+				break;
+			case EventType.KEY_RELEASE:
+				out.put(keyRelease).putDecimal(code).put(' ').put('(').putText(KeyTable.name(x)).put(')');
+				break;
+			default:
+				return;
+		}
+		out.newLine();
+		out.put(micros ? waitMicros : waitMillis).putDecimal(wait).newLine();
+	}
+
+	@Override
+	protected void encodeModifiers(int mask) throws IOException {
+		out.put(modifiers).putDecimal(mask).newLine();
+	}
+
+	@Override
+	protected void encodeCollapsedRepeats() throws IOException {
+		out.put(collapsedRepeats).newLine();
+	}
+
+	@Override
+	protected void encodeExit() throws IOException {
+		out.put(exit).newLine();
+	}
+
+	@Override
+	protected void encodeSegmentHeader(int index) throws IOException {
+		out.put(segmentHeader).putDecimal(index).newLine();
+	}
+
+	@Override
+	protected void encodeSegmentBody() throws IOException {
+		out.put(segmentBody).newLine();
+	}
+}
@@ -0,0 +1,212 @@
+package recorder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits a long recording into segments, rolling to a new file once the
+ * current one reaches a size or covers a stretch of recorded time.
+ *
+ * Every segment opens with a header that moves the cursor to where it was
+ * and presses whatever keys and buttons were held at that point, so it can
+ * be played on its own. The file the user chose becomes a manifest listing
+ * the segments in order, which the player plays as one macro.
+ */
+public class SegmentedWriter implements EventWriter {
+	/**
+	 * First line of a manifest file.
+	 */
+	public static final String manifestMagic = "Manifest";
+
+	/**
+	 * Opens the writer of one segment.
+	 */
+	public interface Opener {
+		EventWriter open(String filepath) throws IOException;
+	}
+
+	private final String prefix;
+	private final String suffix;
+	private final Opener opener;
+	private final long maxBytes;
+	private final long maxNanos;
+	private final BufferedWriter manifest;
+
+	private EventWriter out;
+	private String segmentPath;
+	private int index = 0;
+	private long segmentNanos = 0;
+	// Sizes of the finished segments.
+	private long finishedBytes = 0;
+
+	// What a new segment has to restore.
+	private boolean moved = false;
+	private int lastX;
+	private int lastY;
+	private final Map<Integer, Integer> heldKeys = new LinkedHashMap<Integer, Integer>();
+	private final Set<Integer> heldButtons = new LinkedHashSet<Integer>();
+	private int modifiers = 0;
+	private boolean collapsedRepeats = false;
+
+	/**
+	 * @param manifestPath the segments are named after it, e.g. out.txt
+	 * 	gives out.0001.txt, out.0002.txt...
+	 * @param maxBytes roll once a segment is this big, as its writer counts it, 0 for no limit.
+	 * @param maxMillis roll once a segment covers this much recorded time, 0 for no limit.
+	 */
+	public SegmentedWriter(String manifestPath, Opener opener, long maxBytes, long maxMillis) throws IOException {
+		File file = new File(manifestPath);
+		String name = file.getName();
+		int dot = name.indexOf('.');
+		String base = dot < 0 ? name : name.substring(0, dot);
+		String parent = file.getParent() == null ? "" : file.getParent() + File.separator;
+
+		this.prefix = parent + base + ".";
+		this.suffix = dot < 0 ? "" : name.substring(dot);
+		this.opener = opener;
+		this.maxBytes = maxBytes;
+		this.maxNanos = maxMillis * MainRecorder.convertRate;
+
+		manifest = new BufferedWriter(new FileWriter(manifestPath));
+		manifest.write(manifestMagic);
+		manifest.newLine();
+		roll();
+	}
+
+	@Override
+	public long getWaitUnit() {
+		return out.getWaitUnit();
+	}
+
+	@Override
+	public void write(int type, int x, int y, int code, long wait) throws IOException {
+		segmentNanos += wait * out.getWaitUnit();
+		if (isFull()) {
+			roll();
+		}
+		out.write(type, x, y, code, wait);
+
+		switch (type) {
+			case EventType.MOVE:
+				moved = true;
+				lastX = x;
+				lastY = y;
+				break;
+			case EventType.KEY_PRESS:
+				heldKeys.put(code, x);
+				break;
+			case EventType.KEY_RELEASE:
+				heldKeys.remove(code);
+				break;
+			case EventType.MOUSE_PRESS:
+				heldButtons.add(code);
+				break;
+			case EventType.MOUSE_RELEASE:
+				heldButtons.remove(code);
+				break;
+		}
+	}
+
+	@Override
+	public void writeModifiers(int mask) throws IOException {
+		out.writeModifiers(mask);
+		modifiers = mask;
+	}
+
+	@Override
+	public void writeCollapsedRepeats() throws IOException {
+		out.writeCollapsedRepeats();
+		collapsedRepeats = true;
+	}
+
+	@Override
+	public void writeExit() throws IOException {
+		out.writeExit();
+	}
+
+	@Override
+	public void writeSegmentHeader(int index) throws IOException {
+		out.writeSegmentHeader(index);
+	}
+
+	@Override
+	public void writeSegmentBody() throws IOException {
+		out.writeSegmentBody();
+	}
+
+	/**
+	 * All segments so far, without the manifest.
+	 */
+	@Override
+	public long getSize() {
+		return finishedBytes + out.getSize();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+		manifest.flush();
+	}
+
+	@Override
+	public void sync() throws IOException {
+		out.sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+		manifest.close();
+	}
+
+	public int getSegmentCount() {
+		return index;
+	}
+
+	private boolean isFull() {
+		if (maxNanos > 0 && segmentNanos >= maxNanos) {
+			return true;
+		}
+		return maxBytes > 0 && out.getSize() >= maxBytes;
+	}
+
+	private void roll() throws IOException {
+		if (out != null) {
+			out.close();
+			finishedBytes += out.getSize();
+		}
+		index++;
+		segmentPath = prefix + String.format("%04d", index) + suffix;
+		out = opener.open(segmentPath);
+		segmentNanos = 0;
+
+		out.writeSegmentHeader(index);
+		if (collapsedRepeats) {
+			out.writeCollapsedRepeats();
+		}
+		if (moved) {
+			out.write(EventType.MOVE, lastX, lastY, 0, 0);
+		}
+		for (Map.Entry<Integer, Integer> key : heldKeys.entrySet()) {
+			out.write(EventType.KEY_PRESS, key.getValue(), 0, key.getKey(), 0);
+		}
+		for (int button : heldButtons) {
+			out.write(EventType.MOUSE_PRESS, 0, 0, button, 0);
+		}
+		if (modifiers != 0) {
+			out.writeModifiers(modifiers);
+		}
+		out.writeSegmentBody();
+
+		// Listed as soon as it exists, so a crash still leaves a playable manifest.
+		manifest.write(new File(segmentPath).getName());
+		manifest.newLine();
+		manifest.flush();
+	}
+}
@@ -0,0 +1,255 @@
+package recorder;
+
+import java.io.IOException;
+
+/**
+ * Bounded queue in front of one {@link EventSink}, drained by its own
+ * thread, so a slow sink only ever holds up itself. What happens when the
+ * queue is full is up to its {@link OverflowPolicy}.
+ *
+ * If the sink fails, e.g. a socket consumer goes away, it is closed and
+ * the queue stops taking events; the rest of the recording goes on.
+ *
+ * Producer and sink thread wait on a private lock, not on the thread, which
+ * join() and the JVM use for themselves.
+ */
+public class SinkQueue implements EventBuffer {
+	// Longest time the thread sleeps before looking for events again.
+	private static final long idleMillis = 2;
+	private static final int batchSize = 1024;
+
+	private final Thread thread;
+	private final Object lock = new Object();
+	private final EventSink sink;
+	private final int policy;
+	private final int capacity;
+	private final int[] types;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] codes;
+	private final long[] times;
+	private int head = 0;
+	private int count = 0;
+	private boolean running = true;
+	private boolean failed = false;
+
+	private long dropped = 0;
+	private long coalesced = 0;
+	private long blockedNanos = 0;
+	private int maxDepth = 0;
+
+	/**
+	 * @param name shown in the thread name and the report.
+	 * @param policy one of {@link OverflowPolicy}; BLOCK stalls the dispatch
+	 * thread, and with it every other consumer, while this sink is behind.
+	 */
+	public SinkQueue(String name, EventSink sink, int capacity, int policy) {
+		this.thread = new Thread("Recording Sink " + name) {
+			public void run() {
+				drain();
+			}
+		};
+		this.sink = sink;
+		this.policy = policy;
+		this.capacity = Math.max(2, capacity);
+		types = new int[this.capacity];
+		xs = new int[this.capacity];
+		ys = new int[this.capacity];
+		codes = new int[this.capacity];
+		times = new long[this.capacity];
+		thread.setDaemon(true);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	@Override
+	public boolean offer(int type, int x, int y, int code, long time) {
+		synchronized (lock) {
+			return put(type, x, y, code, time);
+		}
+	}
+
+	// Called with the lock held.
+	private boolean put(int type, int x, int y, int code, long time) {
+		if (failed || !running) {
+			return false;
+		}
+		if (count == capacity) {
+			switch (policy) {
+				case OverflowPolicy.BLOCK:
+					if (!awaitRoom()) {
+						dropped++;
+						return false;
+					}
+					break;
+				case OverflowPolicy.COALESCE_MOTION:
+					int newest = index(count - 1);
+					if (type == EventType.MOVE && types[newest] == EventType.MOVE) {
+						// The newer position replaces the queued one.
+						xs[newest] = x;
+						ys[newest] = y;
+						times[newest] = time;
+						coalesced++;
+						return true;
+					}
+					if (coalesce()) {
+						break;
+					}
+					dropOldest();
+					break;
+				default:
+					dropOldest();
+					break;
+			}
+		}
+
+		int i = index(count);
+		types[i] = type;
+		xs[i] = x;
+		ys[i] = y;
+		codes[i] = code;
+		times[i] = time;
+		count++;
+		maxDepth = Math.max(maxDepth, count);
+		return true;
+	}
+
+	private void drain() {
+		int[] batchTypes = new int[batchSize];
+		int[] batchXs = new int[batchSize];
+		int[] batchYs = new int[batchSize];
+		int[] batchCodes = new int[batchSize];
+		long[] batchTimes = new long[batchSize];
+
+		try {
+			while (true) {
+				int n;
+				synchronized (lock) {
+					if (count == 0 && running) {
+						lock.wait(idleMillis);
+					}
+					if (count == 0 && !running) {
+						break;
+					}
+					n = Math.min(count, batchSize);
+					for (int k = 0 ; k < n ; k++) {
+						int i = index(k);
+						batchTypes[k] = types[i];
+						batchXs[k] = xs[i];
+						batchYs[k] = ys[i];
+						batchCodes[k] = codes[i];
+						batchTimes[k] = times[i];
+					}
+					head = index(n);
+					count -= n;
+					// Room for a blocked producer.
+					lock.notifyAll();
+				}
+
+				// Outside the lock, so capture never waits on the sink itself.
+				for (int k = 0 ; k < n ; k++) {
+					sink.event(batchTypes[k], batchXs[k], batchYs[k], batchCodes[k], batchTimes[k]);
+				}
+				if (n > 0) {
+					sink.flush();
+				}
+			}
+			sink.close();
+		}
+		catch (IOException iox) {
+			System.err.println(thread.getName() + " failed.");
+			System.err.println(iox.getMessage());
+			fail();
+		}
+		catch (InterruptedException ix) {
+			fail();
+		}
+	}
+
+	/**
+	 * Stops taking events, lets the sink have what is queued and waits
+	 * until it is closed.
+	 */
+	public void finish() {
+		synchronized (lock) {
+			running = false;
+			lock.notifyAll();
+		}
+		try {
+			thread.join();
+		}
+		catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public String report() {
+		synchronized (lock) {
+			return thread.getName() + ": high-water mark " + maxDepth + "/" + capacity
+					+ ", dropped " + dropped + ", coalesced " + coalesced
+					+ ", blocked " + blockedNanos / 1000 + " us" + (failed ? ", failed" : "");
+		}
+	}
+
+	// Waits for the sink thread to make room, on the dispatch thread; false if it never will.
+	private boolean awaitRoom() {
+		long start = System.nanoTime();
+		try {
+			while (count == capacity && running && !failed) {
+				lock.wait();
+			}
+		}
+		catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+		}
+		blockedNanos += System.nanoTime() - start;
+		return count < capacity && running && !failed;
+	}
+
+	// Keeps only the last of every run of queued moves; true if that freed a slot.
+	private boolean coalesce() {
+		int kept = 0;
+		for (int k = 0 ; k < count ; k++) {
+			int i = index(k);
+			if (types[i] == EventType.MOVE && k + 1 < count && types[index(k + 1)] == EventType.MOVE) {
+				continue;
+			}
+			int j = index(kept++);
+			types[j] = types[i];
+			xs[j] = xs[i];
+			ys[j] = ys[i];
+			codes[j] = codes[i];
+			times[j] = times[i];
+		}
+		coalesced += count - kept;
+		boolean freed = kept < count;
+		count = kept;
+		return freed;
+	}
+
+	private void dropOldest() {
+		head = index(1);
+		count--;
+		dropped++;
+	}
+
+	private void fail() {
+		synchronized (lock) {
+			failed = true;
+			count = 0;
+			lock.notifyAll();
+		}
+		try {
+			sink.close();
+		}
+		catch (IOException iox) {
+			// Already failed.
+		}
+	}
+
+	private int index(int k) {
+		return (head + k) % capacity;
+	}
+}
@@ -0,0 +1,25 @@
+package recorder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Streams the recording to a consumer listening on a local port, in the
+ * {@link BinaryFormat}, flushed after every batch.
+ */
+public class SocketSink extends WriterSink {
+	public SocketSink(int port, boolean micros, long startTime) throws IOException {
+		this(connect(port), micros, startTime);
+	}
+
+	private SocketSink(Socket socket, boolean micros, long startTime) throws IOException {
+		super(new BinaryRecordingWriter(socket.getOutputStream(), micros), startTime);
+	}
+
+	private static Socket connect(int port) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+}
@@ -0,0 +1,128 @@
+package recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base of the writers that encode a recording into a stream, e.g. a file
+ * or a compressing stream in front of one. The stream is opened once when
+ * recording starts and closed when it stops; subclasses encode each event
+ * straight into a reusable buffer.
+ *
+ * Writes after close() are ignored.
+ */
+public abstract class StreamRecordingWriter implements EventWriter {
+	private static final int bufferSize = 64 * 1024;
+
+	protected final EventEncoder out;
+	protected final boolean micros;
+	// The file under the stream, if sync() can force it.
+	private final ChannelOutputStream file;
+	// Compressed output is only measured once it reaches the file.
+	private final boolean compressed;
+	private boolean closed = false;
+
+	/**
+	 * Takes ownership of the stream.
+	 * @param file the file stream ends up in, forced by {@link #sync()}; null if none.
+	 * @param micros write waits in microseconds instead of milliseconds.
+	 */
+	protected StreamRecordingWriter(OutputStream stream, ChannelOutputStream file, boolean micros) {
+		out = new EventEncoder(stream, bufferSize);
+		this.file = file;
+		this.compressed = file != null && stream != file;
+		this.micros = micros;
+	}
+
+	protected abstract void encode(int type, int x, int y, int code, long wait) throws IOException;
+
+	protected abstract void encodeModifiers(int mask) throws IOException;
+
+	protected abstract void encodeCollapsedRepeats() throws IOException;
+
+	protected abstract void encodeExit() throws IOException;
+
+	protected abstract void encodeSegmentHeader(int index) throws IOException;
+
+	protected abstract void encodeSegmentBody() throws IOException;
+
+	/**
+	 * Length of one unit of the waits written by this writer, in nanoseconds.
+	 */
+	@Override
+	public long getWaitUnit() {
+		return micros ? 1000 : MainRecorder.convertRate;
+	}
+
+	@Override
+	public synchronized void write(int type, int x, int y, int code, long wait) throws IOException {
+		if (!closed) {
+			encode(type, x, y, code, wait);
+		}
+	}
+
+	@Override
+	public synchronized void writeModifiers(int mask) throws IOException {
+		if (!closed) {
+			encodeModifiers(mask);
+		}
+	}
+
+	@Override
+	public synchronized void writeCollapsedRepeats() throws IOException {
+		if (!closed) {
+			encodeCollapsedRepeats();
+		}
+	}
+
+	@Override
+	public synchronized void writeExit() throws IOException {
+		if (!closed) {
+			encodeExit();
+		}
+	}
+
+	@Override
+	public synchronized void writeSegmentHeader(int index) throws IOException {
+		if (!closed) {
+			encodeSegmentHeader(index);
+		}
+	}
+
+	@Override
+	public synchronized void writeSegmentBody() throws IOException {
+		if (!closed) {
+			encodeSegmentBody();
+		}
+	}
+
+	@Override
+	public synchronized long getSize() {
+		return compressed ? file.getWritten() : out.size();
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (!closed) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public synchronized void sync() throws IOException {
+		if (!closed) {
+			out.flush();
+			if (file != null) {
+				file.sync();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package recorder;
+
+/**
+ * When a recording is forced to the storage device, trading capture
+ * throughput for what survives a crash or power loss.
+ */
+public final class SyncPolicy {
+	// Never forced; the operating system writes the file back when it likes.
+	public static final int NONE = 0;
+	// Forced every so many milliseconds.
+	public static final int INTERVAL = 1;
+	// Forced every so many events.
+	public static final int EVENTS = 2;
+	// Forced once, when recording stops.
+	public static final int ON_STOP = 3;
+
+	private SyncPolicy() {
+	}
+}
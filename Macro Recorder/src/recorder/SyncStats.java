@@ -0,0 +1,47 @@
+package recorder;
+
+/**
+ * Bytes written and syncs done by the {@link ChannelOutputStream}s of a
+ * session. Updated by the thread writing the recording; read it once that
+ * thread is finished.
+ */
+public class SyncStats {
+	private long bytes = 0;
+	private long syncs = 0;
+	private long syncNanos = 0;
+	private long maxSyncNanos = 0;
+
+	void wrote(long count) {
+		bytes += count;
+	}
+
+	void synced(long nanos) {
+		syncs++;
+		syncNanos += nanos;
+		maxSyncNanos = Math.max(maxSyncNanos, nanos);
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getSyncs() {
+		return syncs;
+	}
+
+	/**
+	 * Mean time a sync took, in nanoseconds.
+	 */
+	public long getMeanSyncNanos() {
+		return syncs == 0 ? 0 : syncNanos / syncs;
+	}
+
+	public long getMaxSyncNanos() {
+		return maxSyncNanos;
+	}
+
+	public String report() {
+		return "Bytes written: " + bytes + ", syncs: " + syncs
+				+ ", sync latency mean/max: " + getMeanSyncNanos() / 1000 + "/" + maxSyncNanos / 1000 + " us";
+	}
+}
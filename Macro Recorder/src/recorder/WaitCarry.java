@@ -0,0 +1,34 @@
+package recorder;
+
+/**
+ * Turns the capture times of consecutive events into the waits written
+ * between them, in whole units of a writer. The part of a wait too small
+ * to be written is carried into the next one, so no time is lost however
+ * coarse the unit. Shared by everything that writes events with an
+ * {@link EventWriter}, so they all get the same waits.
+ */
+public class WaitCarry {
+	private long prevTime;
+	// Part of the last wait too small to be written, carried into the next one.
+	private long carry = 0;
+
+	/**
+	 * @param startTime capture time the first wait is counted from.
+	 */
+	public WaitCarry(long startTime) {
+		this.prevTime = startTime;
+	}
+
+	/**
+	 * @param time capture time of the next event, in nanoseconds.
+	 * @param unit length of one wait unit, in nanoseconds.
+	 * @return the wait since the previous event, in units.
+	 */
+	public long next(long time, long unit) {
+		long delta = Math.abs(time - prevTime) + carry;
+		prevTime = time;
+		long wait = delta / unit;
+		carry = delta - wait * unit;
+		return wait;
+	}
+}
@@ -0,0 +1,42 @@
+package recorder;
+
+import java.io.IOException;
+
+/**
+ * Sink writing the events it gets with an {@link EventWriter}, working out
+ * the waits between them with a {@link WaitCarry} like the
+ * {@link WriterThread} does.
+ */
+public class WriterSink implements EventSink {
+	private final EventWriter out;
+	private final WaitCarry waits;
+
+	public WriterSink(EventWriter out, long startTime) {
+		this.out = out;
+		this.waits = new WaitCarry(startTime);
+	}
+
+	@Override
+	public void event(int type, int x, int y, int code, long time) throws IOException {
+		if (type == EventType.EXIT) {
+			out.writeExit();
+			return;
+		}
+		if (type == EventType.MODIFIERS) {
+			out.writeModifiers(code);
+			return;
+		}
+
+		out.write(type, x, y, code, waits.next(time, out.getWaitUnit()));
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
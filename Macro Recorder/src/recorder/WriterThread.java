@@ -0,0 +1,167 @@
+package recorder;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the {@link EventQueue} filled by the listeners into an
+ * {@link EventStore} and writes the store out every flush interval and when
+ * the recording stops, so no formatting or disk I/O happens on the native
+ * dispatch thread.
+ */
+public class WriterThread extends Thread implements EventQueue.Handler {
+	// How long to sleep when the queue is empty.
+	private static final long idleNanos = 2000000;
+
+	private final EventQueue queue;
+	private final EventWriter out;
+	private final EventStore store = new EventStore();
+	private final long flushNanos;
+	private final double simplifyTolerance;
+	private int syncPolicy = SyncPolicy.NONE;
+	private long syncEvery = 0;
+	private boolean collapsedRepeats = false;
+	// Events written since the last sync.
+	private long unsynced = 0;
+	private final WaitCarry waits;
+	private boolean exited = false;
+	private volatile boolean running = true;
+
+	/**
+	 * Writes everything once the thread is finished.
+	 */
+	public WriterThread(EventQueue queue, EventWriter out, long startTime) {
+		this(queue, out, startTime, 0, 0);
+	}
+
+	/**
+	 * @param flushInterval in milliseconds between writes of the store, 0 to only write at the end.
+	 * @param simplifyTolerance to simplify mouse paths with before each write, 0 to keep them as recorded.
+	 */
+	public WriterThread(EventQueue queue, EventWriter out, long startTime, long flushInterval, double simplifyTolerance) {
+		super("Recording Writer");
+		this.queue = queue;
+		this.out = out;
+		this.waits = new WaitCarry(startTime);
+		this.flushNanos = flushInterval * MainRecorder.convertRate;
+		this.simplifyTolerance = simplifyTolerance;
+		setDaemon(true);
+	}
+
+	/**
+	 * Forces the output to disk periodically; call before starting the
+	 * thread. NONE and ON_STOP are left to the file stream.
+	 * @param every milliseconds for INTERVAL, events for EVENTS.
+	 */
+	public void setSyncPolicy(int policy, long every) {
+		this.syncPolicy = policy;
+		this.syncEvery = Math.max(1, every);
+	}
+
+	/**
+	 * Marks the recording as made with key autorepeat collapsed; call
+	 * before starting the thread.
+	 */
+	public void setCollapsedRepeats(boolean collapsedRepeats) {
+		this.collapsedRepeats = collapsedRepeats;
+	}
+
+	@Override
+	public void run() {
+		try {
+			if (collapsedRepeats) {
+				out.writeCollapsedRepeats();
+			}
+			long syncNanos = syncEvery * MainRecorder.convertRate;
+			long nextFlush = System.nanoTime() + flushNanos;
+			long nextSync = System.nanoTime() + syncNanos;
+			while (running) {
+				if (queue.drain(this) == 0) {
+					LockSupport.parkNanos(idleNanos);
+				}
+				if (syncPolicy == SyncPolicy.INTERVAL && System.nanoTime() - nextSync >= 0) {
+					// Everything captured so far, not only the last flushed batch.
+					writeStore();
+					out.sync();
+					nextSync = System.nanoTime() + syncNanos;
+				} else if (syncPolicy == SyncPolicy.EVENTS && store.size() >= syncEvery) {
+					writeStore();
+				} else if (flushNanos > 0 && System.nanoTime() - nextFlush >= 0) {
+					writeStore();
+					out.flush();
+					nextFlush = System.nanoTime() + flushNanos;
+				}
+			}
+			// Whatever was queued before the listeners were removed.
+			queue.drain(this);
+			writeStore();
+			if (!exited) {
+				// Stopped without the stop key.
+				out.writeExit();
+			}
+			out.close();
+		}
+		catch (IOException iox) {
+			System.err.println("Error writing.");
+			System.err.println(iox.getMessage());
+
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Stops the thread after a final drain and waits until the file is closed.
+	 */
+	public void finish() {
+		running = false;
+		LockSupport.unpark(this);
+		try {
+			join();
+		}
+		catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Session counts of the store; only meaningful once finished.
+	 */
+	public String report() {
+		return store.report();
+	}
+
+	@Override
+	public void event(int type, int x, int y, int code, long time) {
+		store.append(type, x, y, code, time);
+	}
+
+	// Formats the stored events and empties the store for the next batch.
+	private void writeStore() throws IOException {
+		if (simplifyTolerance > 0) {
+			store.simplify(simplifyTolerance);
+		}
+
+		int size = store.size();
+		long unit = out.getWaitUnit();
+		for (int i = 0 ; i < size ; i++) {
+			int type = store.getType(i);
+			if (type == EventType.EXIT) {
+				out.writeExit();
+				exited = true;
+				continue;
+			}
+			if (type == EventType.MODIFIERS) {
+				out.writeModifiers(store.getCode(i));
+				continue;
+			}
+
+			long wait = waits.next(store.getTime(i), unit);
+			out.write(type, store.getX(i), store.getY(i), store.getCode(i), wait);
+			if (syncPolicy == SyncPolicy.EVENTS && ++unsynced >= syncEvery) {
+				out.sync();
+				unsynced = 0;
+			}
+		}
+		store.clear();
+	}
+}